@@ -12,18 +12,17 @@ public class Levels {
     /**
      * The level that alerts are triggered at.
      */
-    private final Integer alert_level;
+    private final int alert_level;
 
     /**
      * The level that warnings are triggered at, if configured.
      */
-    private final Integer warning_level;
+    private final int warning_level;
 
     /**
      * Default constructor, allowing for an alert level and a
-     * warning level to be passed in. Either *can* be null (but
-     * they should not be, without good reason). This is also
-     * used by Jackson when (de)serializing).
+     * warning level to be passed in. This is also used by
+     * Jackson when (de)serializing).
      *
      * @param alert_level the alert level threshold
      * @param warning_level the warning level threshold
@@ -38,18 +37,18 @@ public class Levels {
     /**
      * Returns the alert level bound to this instance.
      *
-     * @return an Integer alert level (can be null)
+     * @return an int alert level
      */
-    public Integer getAlertLevel(){
+    public int getAlertLevel(){
         return alert_level;
     }
 
     /**
      * Returns the warning level bound to this instance.
      *
-     * @return an Integer warning level (can be null)
+     * @return an int warning level
      */
-    public Integer getWarningLevel(){
+    public int getWarningLevel(){
         return warning_level;
     }
 
@@ -0,0 +1,198 @@
+package com.zackehh.floodz.common.util;
+
+import com.zackehh.corba.common.Reading;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding for a sequence of time-ordered Readings, used
+ * to shrink bulk history transfers. The encoding is:
+ *
+ * - the number of readings, as a varint
+ * - for each reading, the delta-of-delta of its time and the delta of its
+ *   measurement (from the previous reading), both as zig-zag varints
+ *
+ * Readings taken at a steady interval with slowly changing measurements
+ * therefore cost around two bytes each, rather than the twelve (plus
+ * alignment) of a {@link Reading} struct.
+ */
+public final class ReadingCodec {
+
+    /**
+     * Shouldn't ever make a new instance of this class, it's static.
+     */
+    private ReadingCodec(){ }
+
+    /**
+     * Decodes readings created by an {@link Encoder}.
+     *
+     * @param data the encoded readings
+     * @return a Reading[] of the decoded readings
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    public static Reading[] decode(byte[] data){
+        // read position, passed by reference
+        int[] position = { 0 };
+
+        // each reading takes at least two bytes, so a larger count is bogus
+        long count = readVarint(data, position);
+        if(count < 0 || count > (data.length - position[0]) / 2){
+            throw new IllegalArgumentException("Encoded readings claim " + count + " readings in " + data.length + " bytes!");
+        }
+
+        // create the output array
+        Reading[] readings = new Reading[(int) count];
+
+        // running state
+        long time = 0, delta = 0;
+        int measurement = 0;
+
+        for(int i = 0; i < count; i++){
+            // rebuild the time from the delta-of-delta
+            delta += unzigzag(readVarint(data, position));
+            time += delta;
+
+            // rebuild the measurement from its delta
+            measurement += (int) unzigzag(readVarint(data, position));
+
+            readings[i] = new Reading(time, measurement);
+        }
+
+        return readings;
+    }
+
+    /**
+     * Reads a varint from the data, moving the position along.
+     *
+     * @param data the encoded data
+     * @param position the current position
+     * @return the decoded value
+     */
+    private static long readVarint(byte[] data, int[] position){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            if(position[0] >= data.length){
+                throw new IllegalArgumentException("Encoded readings are truncated!");
+            }
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Encoded readings contain a malformed varint!");
+    }
+
+    /**
+     * Maps a signed value to an unsigned one, so that small negative
+     * values stay small.
+     *
+     * @param value the signed value
+     * @return the zig-zag encoded value
+     */
+    private static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigzag(long)}.
+     *
+     * @param value the zig-zag encoded value
+     * @return the signed value
+     */
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Incrementally encodes readings, so that callers holding readings
+     * in their own structures don't need to create Reading objects.
+     */
+    public static class Encoder {
+
+        /**
+         * The encoded readings, excluding the count.
+         */
+        private byte[] buffer = new byte[64];
+
+        /**
+         * The number of bytes used in the buffer.
+         */
+        private int length;
+
+        /**
+         * The number of readings encoded.
+         */
+        private int count;
+
+        /**
+         * The time of the previous reading.
+         */
+        private long time;
+
+        /**
+         * The time delta of the previous reading.
+         */
+        private long delta;
+
+        /**
+         * The measurement of the previous reading.
+         */
+        private int measurement;
+
+        /**
+         * Adds a reading to the encoding.
+         *
+         * @param time the time of the reading
+         * @param measurement the measurement of the reading
+         */
+        public void add(long time, int measurement){
+            // delta-of-delta of the time
+            long nextDelta = time - this.time;
+            writeVarint(zigzag(nextDelta - delta));
+
+            // delta of the measurement
+            writeVarint(zigzag((long) measurement - this.measurement));
+
+            this.time = time;
+            this.delta = nextDelta;
+            this.measurement = measurement;
+            this.count++;
+        }
+
+        /**
+         * Returns the encoded readings, prefixed by the count.
+         *
+         * @return a byte[] of the encoding
+         */
+        public byte[] toByteArray(){
+            // encode the count on its own
+            Encoder prefix = new Encoder();
+            prefix.writeVarint(count);
+
+            // join the count and the body
+            byte[] data = Arrays.copyOf(prefix.buffer, prefix.length + length);
+            System.arraycopy(buffer, 0, data, prefix.length, length);
+
+            return data;
+        }
+
+        /**
+         * Writes an unsigned varint to the buffer.
+         *
+         * @param value the value to write
+         */
+        private void writeVarint(long value){
+            // a long never takes more than 10 bytes
+            if(length + 10 > buffer.length){
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            while((value & ~0x7FL) != 0){
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+    }
+}
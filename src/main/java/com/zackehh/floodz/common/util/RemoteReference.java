@@ -0,0 +1,376 @@
+package com.zackehh.floodz.common.util;
+
+import org.omg.CORBA.COMM_FAILURE;
+import org.omg.CORBA.OBJECT_NOT_EXIST;
+import org.omg.CORBA.SystemException;
+import org.omg.CORBA.TRANSIENT;
+import org.omg.CosNaming.NamingContextExt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A self-healing wrapper around a CORBA object reference retrieved from
+ * the NameService. The reference is resolved once and cached; calls are
+ * made directly against the cached reference without pinging first.
+ *
+ * If a call fails with COMM_FAILURE, TRANSIENT or OBJECT_NOT_EXIST, the
+ * reference is resolved again via the NameService (calling the reconnect
+ * handler so the caller can re-register) and the call is retried up to a
+ * bounded number of times.
+ *
+ * The reconnect handler runs without holding the lock of the reference, so
+ * a handler making many remote calls (such as re-registering every hosted
+ * sensor) never blocks other callers; until it succeeds, they fail fast.
+ *
+ * Re-resolution backs off exponentially. The backoff belongs to the
+ * reference rather than to a single call: it doubles on every failure
+ * (up to a maximum), carries over to later calls, and resets once a call
+ * succeeds. No resolution is attempted until the current backoff has
+ * passed; calls made before then fail straight away, and retries within a
+ * call wait for it. Every backoff, including the first, is randomised, so
+ * that many callers losing the same object (e.g. every sensor of a
+ * restarted LMS) spread their lookups out rather than all hitting the
+ * NameService and the object at once.
+ *
+ * @param <T> the type of the remote object
+ */
+public class RemoteReference<T> {
+
+    /**
+     * Start up a {@link org.slf4j.Logger} to output any information.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RemoteReference.class);
+
+    /**
+     * The default number of attempts made per call.
+     */
+    private static final int DEFAULT_ATTEMPTS = 3;
+
+    /**
+     * The default initial backoff between attempts, in ms.
+     */
+    private static final long DEFAULT_BACKOFF = 100;
+
+    /**
+     * The default maximum backoff between attempts, in ms.
+     */
+    private static final long DEFAULT_MAX_BACKOFF = 2000;
+
+    /**
+     * The NameService used to resolve the reference.
+     */
+    private final NamingContextExt nameService;
+
+    /**
+     * The name the object is bound under.
+     */
+    private final String name;
+
+    /**
+     * The class of the remote object.
+     */
+    private final Class<T> clazz;
+
+    /**
+     * The handler to call after the reference is resolved again.
+     */
+    private final Reconnect<T> reconnect;
+
+    /**
+     * The number of attempts made per call.
+     */
+    private final int attempts;
+
+    /**
+     * The initial backoff between attempts, in ms.
+     */
+    private final long backoff;
+
+    /**
+     * The maximum backoff between attempts, in ms.
+     */
+    private final long maxBackoff;
+
+    /**
+     * The currently cached reference, or null if unresolved.
+     */
+    private volatile T ref;
+
+    /**
+     * The current backoff in ms, or 0 while the object is reachable.
+     * Written under this; volatile so successful calls can check it cheaply.
+     */
+    private volatile long delay;
+
+    /**
+     * The earliest time (in ms) the reference may be resolved again.
+     * Guarded by this.
+     */
+    private long nextResolve;
+
+    /**
+     * Whether a thread is currently resolving and re-registering.
+     * Guarded by this.
+     */
+    private boolean reconnecting;
+
+    /**
+     * Creates a new reference using the default retry settings.
+     *
+     * @param nameService the NameService to resolve with
+     * @param name the name of the object
+     * @param clazz the class of the object
+     * @param reconnect the handler to call on reconnect (may be null)
+     */
+    public RemoteReference(NamingContextExt nameService, String name, Class<T> clazz, Reconnect<T> reconnect){
+        this(nameService, name, clazz, reconnect, DEFAULT_ATTEMPTS, DEFAULT_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * Creates a new reference using custom retry settings.
+     *
+     * @param nameService the NameService to resolve with
+     * @param name the name of the object
+     * @param clazz the class of the object
+     * @param reconnect the handler to call on reconnect (may be null)
+     * @param attempts the number of attempts per call
+     * @param backoff the initial backoff in ms
+     * @param maxBackoff the maximum backoff in ms
+     */
+    public RemoteReference(NamingContextExt nameService, String name, Class<T> clazz,
+                           Reconnect<T> reconnect, int attempts, long backoff, long maxBackoff){
+        this.nameService = nameService;
+        this.name = name;
+        this.clazz = clazz;
+        this.reconnect = reconnect;
+        this.attempts = Math.max(1, attempts);
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the name this reference resolves.
+     *
+     * @return the String name
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Returns the cached reference, resolving it if needed. This does not
+     * call the reconnect handler, so is intended for the initial lookup.
+     *
+     * @return an instance of <T>, or null if unresolvable
+     */
+    public T get(){
+        T current = ref;
+        if(current == null){
+            synchronized(this){
+                if(ref == null){
+                    ref = NameServiceHandler.retrieveObject(nameService, name, clazz);
+                }
+                current = ref;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Invokes a call against the remote object, re-resolving and retrying
+     * if the object appears to have gone away. Any other failure is thrown
+     * straight back to the caller.
+     *
+     * @param call the call to make
+     * @param <R> the return type of the call
+     * @return the result of the call
+     * @throws SystemException the last failure, if all attempts fail
+     */
+    public <R> R invoke(RemoteCall<T, R> call) {
+        SystemException failure = null;
+
+        for(int attempt = 0; attempt < attempts; attempt++){
+            // use the cached reference, or find a new one
+            T target = ref;
+            if(target == null){
+                // retries wait out the backoff; the first attempt never blocks
+                if(attempt > 0){
+                    awaitResolve();
+                }
+                target = refresh(null);
+                if(target == null){
+                    failure = new TRANSIENT("Unable to resolve `" + name + "` from NameService");
+                    continue;
+                }
+            }
+
+            try {
+                R result = call.call(target);
+                succeeded();
+                return result;
+            } catch(COMM_FAILURE | TRANSIENT | OBJECT_NOT_EXIST e) {
+                // drop the reference so it is resolved again once the backoff passes
+                logger.debug("Call to `{}` failed: {}", name, e);
+                invalidate(target);
+                failed();
+                failure = e;
+            }
+        }
+
+        throw failure;
+    }
+
+    /**
+     * Drops the cached reference if it is still the given stale reference.
+     *
+     * @param stale the reference which failed
+     */
+    private synchronized void invalidate(T stale){
+        if(ref == stale){
+            ref = null;
+        }
+    }
+
+    /**
+     * Resolves the reference from the NameService and calls the reconnect
+     * handler. The reference is only cached once the handler succeeds; if
+     * it throws, the failure backs off like any other. If another thread
+     * has already replaced the stale reference, the replacement is returned
+     * without resolving again; if the backoff has not yet passed, or another
+     * thread is already reconnecting, nothing is resolved at all.
+     *
+     * Only one thread reconnects at a time, but it does so without holding
+     * the lock of this reference, so a slow reconnect handler never blocks
+     * other callers; they fail fast and retry once the backoff passes.
+     *
+     * @param stale the reference which failed (or null)
+     * @return the new reference, or null if unresolvable
+     */
+    private T refresh(T stale){
+        synchronized(this){
+            // someone else beat us to it
+            if(ref != stale){
+                return ref;
+            }
+
+            // leave the NameService alone until the backoff has passed
+            if(reconnecting || System.currentTimeMillis() < nextResolve){
+                return null;
+            }
+            reconnecting = true;
+        }
+
+        try {
+            // find the object again
+            T resolved = NameServiceHandler.retrieveObject(nameService, name, clazz);
+            if(resolved == null){
+                failed();
+                return null;
+            }
+
+            // let the owner re-register, backing off and retrying if it cannot
+            if(reconnect != null){
+                try {
+                    reconnect.reconnected(resolved);
+                } catch(RuntimeException e) {
+                    logger.warn("Unable to re-register with `{}`: {}", name, e);
+                    failed();
+                    return null;
+                }
+            }
+
+            logger.info("Resolved `{}` from NameService", name);
+
+            synchronized(this){
+                return ref = resolved;
+            }
+        } finally {
+            synchronized(this){
+                reconnecting = false;
+            }
+        }
+    }
+
+    /**
+     * Grows the backoff after a failure, and schedules the next resolution
+     * somewhere between half and all of the new backoff from now.
+     */
+    private synchronized void failed(){
+        delay = delay == 0 ? backoff : Math.min(maxBackoff, delay * 2);
+        nextResolve = System.currentTimeMillis() + delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Resets the backoff after a successful call.
+     */
+    private void succeeded(){
+        // avoid the lock in the common case
+        if(delay != 0){
+            synchronized(this){
+                delay = 0;
+                nextResolve = 0;
+            }
+        }
+    }
+
+    /**
+     * Waits until the reference may be resolved again.
+     */
+    private void awaitResolve(){
+        long wait;
+        synchronized(this){
+            wait = nextResolve - System.currentTimeMillis();
+        }
+        if(wait > 0){
+            sleep(wait);
+        }
+    }
+
+    /**
+     * Sleeps for the given time, preserving the interrupt status.
+     *
+     * @param millis the time to sleep
+     */
+    private static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A call to make against a remote object.
+     *
+     * @param <T> the type of the remote object
+     * @param <R> the return type of the call
+     */
+    public interface RemoteCall<T, R> {
+
+        /**
+         * Makes the call against the given object.
+         *
+         * @param ref the remote object
+         * @return the result of the call
+         */
+        R call(T ref);
+    }
+
+    /**
+     * A handler called when a reference has been resolved again, allowing
+     * the owner to re-register with the remote object before retrying.
+     *
+     * @param <T> the type of the remote object
+     */
+    public interface Reconnect<T> {
+
+        /**
+         * Called with the newly resolved reference.
+         *
+         * @param ref the remote object
+         */
+        void reconnected(T ref);
+    }
+}
@@ -0,0 +1,335 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.AlertPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded log of the alerts received by a station, ordered by time.
+ *
+ * Entries live in a concurrent skip list keyed by the time of the reading,
+ * shifted left to leave room for a sequence number in the low bits, so that
+ * alerts sharing a timestamp each get their own key. Appends never block
+ * one another.
+ *
+ * Reading times come from sensor clocks, so they only order range queries;
+ * retention follows the order and time in which this station received each
+ * alert, tracked in a queue alongside. Whenever the log holds more than its
+ * maximum number of entries, or the earliest received entries are past the
+ * maximum age, those are evicted first, so a sensor with a skewed clock can
+ * neither evict fresh alerts nor keep stale ones around.
+ *
+ * A copy of the whole log is cached, and only rebuilt once the log has
+ * changed.
+ *
+ * Each zone also has its own index over the same keys, so a time range of
+ * a single zone can be paged through without visiting other zones. Keys
+ * double as cursors; a cursor to an evicted entry simply resumes from the
+ * next remaining one.
+ */
+class AlertLog {
+
+    /**
+     * The number of low key bits used for the sequence number.
+     */
+    private static final int SEQUENCE_BITS = 20;
+
+    /**
+     * The mask of the sequence bits of a key.
+     */
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * The logged alerts, by key.
+     */
+    private final ConcurrentSkipListMap<Long, Alert> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * The logged alerts of each zone, by key.
+     */
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Alert>> zones = new ConcurrentHashMap<>();
+
+    /**
+     * The logged alerts, in the order they were received.
+     */
+    private final ConcurrentLinkedQueue<Received> received = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A copy of the whole log, as returned by {@link #snapshot()}.
+     */
+    private final Snapshot<Alert[]> snapshot = new Snapshot<Alert[]>() {
+        @Override
+        protected Alert[] build() {
+            return entries.values().toArray(new Alert[0]);
+        }
+    };
+
+    /**
+     * The number of logged alerts (the size of a skip list is O(n)).
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * The sequence used to tell apart alerts with the same timestamp.
+     */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * The maximum number of alerts to keep.
+     */
+    private final int capacity;
+
+    /**
+     * The maximum time to keep an alert after receiving it in ms (0 keeps alerts regardless of age).
+     */
+    private final long maxAge;
+
+    /**
+     * Creates a new log bounded by count and age.
+     *
+     * @param capacity the maximum number of alerts to keep
+     * @param maxAge the maximum time to keep an alert after receiving it in ms (0 for no limit)
+     */
+    public AlertLog(int capacity, long maxAge){
+        this.capacity = Math.max(1, capacity);
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Appends an alert to the log, evicting the earliest received alerts
+     * if the log is now over its bounds.
+     *
+     * @param alert the alert to log
+     */
+    public void add(Alert alert){
+        long time = key(alert.reading.time) & ~SEQUENCE_MASK;
+
+        // find a free key for this timestamp
+        long key = time | (sequence.getAndIncrement() & SEQUENCE_MASK);
+        while(entries.putIfAbsent(key, alert) != null){
+            key = time | (sequence.getAndIncrement() & SEQUENCE_MASK);
+        }
+
+        // queue it for eviction before counting it, so every count can be polled
+        received.add(new Received(key, alert, System.currentTimeMillis()));
+        count.incrementAndGet();
+        snapshot.invalidate();
+
+        // index it under its zone, unless it was evicted in the meantime
+        zone(alert.meta.sensorMeta.zone).put(key, alert);
+        if(entries.get(key) != alert){
+            unindex(key, alert);
+        }
+
+        trim();
+    }
+
+    /**
+     * Returns the number of alerts in the log.
+     *
+     * @return the int size
+     */
+    public int size(){
+        return count.get();
+    }
+
+    /**
+     * Returns every alert in the log, oldest first. The array is shared
+     * between callers, and only rebuilt after a change.
+     *
+     * @return an array of Alerts
+     */
+    public Alert[] snapshot(){
+        trim();
+        return snapshot.get();
+    }
+
+    /**
+     * Retrieves up to `limit` alerts with a time inside [from, to), oldest
+     * first, optionally from a single zone. If more alerts match, the
+     * returned cursor can be passed to {@link #page(String, long, long, int)}
+     * to continue, otherwise the cursor is -1.
+     *
+     * @param zone the zone to query, or an empty String for every zone
+     * @param from the earliest time to include
+     * @param to the time to stop before
+     * @param limit the maximum alerts to return, or <= 0 for no limit
+     * @return an AlertPage instance
+     */
+    public AlertPage range(String zone, long from, long to, int limit){
+        return page(zone, key(from), to, limit);
+    }
+
+    /**
+     * Continues a ranged retrieval from a cursor previously returned by
+     * {@link #range(String, long, long, int)} or this method. Alerts evicted
+     * since the cursor was issued are skipped. A negative cursor, such as
+     * the -1 returned with the last page, yields an empty page.
+     *
+     * @param zone the zone to query, or an empty String for every zone
+     * @param cursor the key to resume from
+     * @param to the time to stop before
+     * @param limit the maximum alerts to return, or <= 0 for no limit
+     * @return an AlertPage instance
+     */
+    public AlertPage page(String zone, long cursor, long to, int limit){
+        // the retrieval has already finished (or the range is empty)
+        if(cursor < 0 || cursor >= key(to)){
+            return new AlertPage(new Alert[0], -1);
+        }
+
+        trim();
+
+        // pick the index to walk
+        ConcurrentSkipListMap<Long, Alert> index = zone == null || zone.isEmpty() ? entries : zones.get(zone);
+        if(index == null){
+            return new AlertPage(new Alert[0], -1);
+        }
+
+        List<Alert> alerts = new ArrayList<>();
+        long next = -1;
+
+        // walk the keys in [cursor, to)
+        for(Map.Entry<Long, Alert> entry : index.subMap(cursor, key(to)).entrySet()){
+            if(limit > 0 && alerts.size() == limit){
+                // point the cursor at the next alert
+                next = entry.getKey();
+                break;
+            }
+            alerts.add(entry.getValue());
+        }
+
+        return new AlertPage(alerts.toArray(new Alert[alerts.size()]), next);
+    }
+
+    /**
+     * Returns the lowest key for a time, saturating rather than overflowing.
+     *
+     * @param time the time in ms
+     * @return the long key
+     */
+    private static long key(long time){
+        if(time <= 0){
+            return 0;
+        }
+        if(time > (Long.MAX_VALUE >> SEQUENCE_BITS)){
+            return Long.MAX_VALUE;
+        }
+        return time << SEQUENCE_BITS;
+    }
+
+    /**
+     * Returns the index of a zone, creating it if needed.
+     *
+     * @param zone the zone name
+     * @return the index of the zone
+     */
+    private ConcurrentSkipListMap<Long, Alert> zone(String zone){
+        ConcurrentSkipListMap<Long, Alert> index = zones.get(zone);
+        if(index == null){
+            ConcurrentSkipListMap<Long, Alert> created = new ConcurrentSkipListMap<>();
+            index = zones.putIfAbsent(zone, created);
+            if(index == null){
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Removes an evicted alert from the index of its zone.
+     *
+     * @param key the key of the alert
+     * @param alert the evicted alert
+     */
+    private void unindex(long key, Alert alert){
+        ConcurrentSkipListMap<Long, Alert> index = zones.get(alert.meta.sensorMeta.zone);
+        if(index != null){
+            index.remove(key, alert);
+        }
+    }
+
+    /**
+     * Evicts the earliest received alerts while the log is over its bounds.
+     */
+    private void trim(){
+        // drop by count, claiming each eviction first so racing threads never overshoot
+        for(int current = count.get(); current > capacity; current = count.get()){
+            if(!count.compareAndSet(current, current - 1)){
+                continue;
+            }
+            Received earliest = received.poll();
+            if(earliest == null){
+                // nothing left to evict after all
+                count.incrementAndGet();
+                break;
+            }
+            evict(earliest);
+        }
+
+        // drop by age
+        if(maxAge > 0){
+            long cutoff = System.currentTimeMillis() - maxAge;
+            for(Received earliest = received.peek();
+                earliest != null && earliest.time < cutoff; earliest = received.peek()){
+                // only count what this thread removed
+                if(received.remove(earliest)){
+                    count.decrementAndGet();
+                    evict(earliest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an alert taken off the received queue from the log.
+     *
+     * @param entry the received entry of the alert
+     */
+    private void evict(Received entry){
+        entries.remove(entry.key, entry.alert);
+        unindex(entry.key, entry.alert);
+        snapshot.invalidate();
+    }
+
+    /**
+     * An alert along with its key and the time it was received.
+     */
+    private static class Received {
+
+        /**
+         * The key of the alert.
+         */
+        private final long key;
+
+        /**
+         * The alert itself.
+         */
+        private final Alert alert;
+
+        /**
+         * The time the alert was received, in ms.
+         */
+        private final long time;
+
+        /**
+         * Creates a new received entry.
+         *
+         * @param key the key of the alert
+         * @param alert the alert itself
+         * @param time the time the alert was received
+         */
+        Received(long key, Alert alert, long time){
+            this.key = key;
+            this.alert = alert;
+            this.time = time;
+        }
+    }
+}
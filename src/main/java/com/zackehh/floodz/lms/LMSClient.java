@@ -3,27 +3,38 @@ package com.zackehh.floodz.lms;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.AlertPage;
 import com.zackehh.corba.common.MetaData;
 import com.zackehh.corba.common.Reading;
 import com.zackehh.corba.common.SensorMeta;
+import com.zackehh.corba.common.Session;
+import com.zackehh.corba.common.ZoneStatistics;
 import com.zackehh.corba.lms.LMSHelper;
 import com.zackehh.corba.lms.LMSPOA;
 import com.zackehh.corba.rmc.RMCServer;
+import com.zackehh.corba.sensor.Sensor;
 import com.zackehh.floodz.common.Constants;
-import com.zackehh.floodz.common.util.Levels;
 import com.zackehh.floodz.common.util.NameServiceHandler;
+import com.zackehh.floodz.common.util.RemoteReference;
 import com.zackehh.floodz.util.InputReader;
 import org.omg.CORBA.ORB;
 import org.omg.CosNaming.NamingContextExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The main LMS driver instance, used to retrieve alerts from a
@@ -32,6 +43,12 @@ import java.util.concurrent.ConcurrentSkipListMap;
  */
 class LMSClient extends LMSPOA {
 
+    /**
+     * The most sensors registered by a single call to {@link #registerSensors(String, int)}
+     * or {@link #openSessions(String, int)}.
+     */
+    private static final int MAX_REGISTRATIONS = 10000;
+
     /**
      * Logging instance via log4j.
      */
@@ -45,20 +62,68 @@ class LMSClient extends LMSPOA {
 
     /**
      * Creates a map to store zone to sensor mappings to keep track of all sensor readings
-     * for a zone.
+     * for a zone, along with a running total to average them.
      */
-    private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Reading>>
+    private final ConcurrentSkipListMap<String, ZoneState>
             zoneMapping = new ConcurrentSkipListMap<>();
 
     /**
-     * A log of previously received alerts, most recent at the end.
+     * The current alerted zones, as returned by {@link #getCurrentState()}.
+     */
+    private final Snapshot<Alert[]> currentState = new Snapshot<Alert[]>() {
+        @Override
+        protected Alert[] build() {
+            return alertStates.values().toArray(new Alert[0]);
+        }
+    };
+
+    /**
+     * The registered sensors, as returned by {@link #getRegisteredSensors()}.
      */
-    private final List<Alert> alertLog = new ArrayList<>();
+    private final Snapshot<SensorMeta[]> registeredSensors = new Snapshot<SensorMeta[]>() {
+        @Override
+        protected SensorMeta[] build() {
+            // create an empty list
+            List<SensorMeta> metaList = new ArrayList<>();
+            // loop all zone entries in the mapping
+            for(Map.Entry<String, ZoneState> zoneMap : zoneMapping.entrySet()){
+                // the level is shared by the whole zone
+                int level = thresholds.alertLevel(zoneMap.getKey());
+                // for each key
+                for(String key : zoneMap.getValue().ids()){
+                    // add a new SensorMeta entry
+                    metaList.add(new SensorMeta(zoneMap.getKey(), key, level));
+                }
+            }
+            // return the list cast to an array
+            return metaList.toArray(new SensorMeta[metaList.size()]);
+        }
+    };
 
     /**
-     * A Map of the zone alert/warning boundaries.
+     * A bounded log of previously received alerts, oldest first.
      */
-    private final HashMap<String, Levels> levels;
+    private final AlertLog alertLog;
+
+    /**
+     * The zone alert/warning boundaries, replaced whenever they are reloaded.
+     */
+    private volatile ThresholdTable thresholds;
+
+    /**
+     * The executor used to evaluate zones again after a reload of the levels.
+     */
+    private final ExecutorService evaluator = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "lms-levels-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     /**
      * The CORBA ORB instance.
@@ -73,7 +138,37 @@ class LMSClient extends LMSPOA {
     /**
      * The RMC this station is connected to.
      */
-    private RMCServer rmc;
+    private final RemoteReference<RMCServer> rmc;
+
+    /**
+     * Sends alerts and cancellations to the RMC in the background.
+     */
+    private final RMCForwarder forwarder;
+
+    /**
+     * How far an alerting zone average must move before the RMC is updated.
+     */
+    private final int alertDelta;
+
+    /**
+     * The policy deciding how often the sensors of each zone report.
+     */
+    private final SamplingPolicy sampling;
+
+    /**
+     * Measures the rate of incoming readings.
+     */
+    private final LoadMeter loadMeter = new LoadMeter();
+
+    /**
+     * Issues and checks sensor session tokens.
+     */
+    private final SessionTokens sessions;
+
+    /**
+     * Limits the rate of readings from each sensor, or null if unlimited.
+     */
+    private final RateLimiter limiter;
 
     /**
      * The name of this LMS as decided by the user.
@@ -89,8 +184,34 @@ class LMSClient extends LMSPOA {
      * @param lArgs the parsed LMS args
      */
     public LMSClient(String[] args, LMSArgs lArgs){
-        // grab the level mappings
-        levels = LMSUtil.retrieveZoneLevels();
+        // grab the level mappings, from the given file if there is one
+        if(lArgs.levels == null){
+            thresholds = new ThresholdTable(LMSUtil.retrieveZoneLevels());
+        } else {
+            final Path path = Paths.get(lArgs.levels);
+            try {
+                thresholds = new ThresholdTable(LMSUtil.readZoneLevels(path));
+                // pick up any changes to the file while running
+                LMSUtil.watchZoneLevels(path, new Runnable() {
+                    @Override
+                    public void run() {
+                        reloadLevels(path);
+                    }
+                });
+            } catch(IOException e) {
+                throw new IllegalStateException("Unable to read levels from `" + path + "`: " + e.getMessage());
+            }
+        }
+
+        // only update the RMC on measurable changes
+        alertDelta = Math.max(1, lArgs.alertDelta);
+
+        // keep a bounded log of alerts
+        alertLog = new AlertLog(lArgs.logSize, lArgs.logAge);
+
+        // create the sampling policy
+        sampling = new SamplingPolicy(lArgs.sampleCalm, lArgs.sampleWarning, lArgs.sampleAlert,
+                lArgs.sampleMargin, lArgs.sampleHysteresis);
 
         // create a new InputReader
         InputReader console = new InputReader(System.in);
@@ -104,6 +225,20 @@ class LMSClient extends LMSPOA {
         System.out.println("");
         logger.info("Registered Local Monitoring Station: {}", name);
 
+        // sign sessions with the given key, falling back to a random one
+        if(lArgs.sessionKey == null){
+            logger.info("No session key given, sessions will not survive a restart");
+        }
+        sessions = new SessionTokens(lArgs.sessionKey, lArgs.sessionTtl * 1000L);
+
+        // limit each sensor, if asked to
+        limiter = lArgs.rate <= 0 ? null : new RateLimiter(lArgs.rate, lArgs.burst, lArgs.overflow, new RateLimiter.Delivery() {
+            @Override
+            public void deliver(MetaData meta, Reading reading) {
+                acceptAlert(new Alert(meta, reading));
+            }
+        });
+
         // initialise the ORB
         orb = ORB.init(args, null);
 
@@ -118,23 +253,35 @@ class LMSClient extends LMSPOA {
             throw new IllegalStateException("Retrieved name service is null!");
         }
 
-        // obtain the Sensor reference in the Naming service
-        rmc = NameServiceHandler.retrieveObject(
-                nameService, Constants.REGIONAL_MONITORING_CENTRE, RMCServer.class);
+        // wrap the RMC reference, registering again if it ever has to be re-resolved
+        rmc = new RemoteReference<>(nameService, Constants.REGIONAL_MONITORING_CENTRE, RMCServer.class,
+                new RemoteReference.Reconnect<RMCServer>() {
+                    @Override
+                    public void reconnected(RMCServer server) {
+                        server.registerLMSConnection(name);
+                    }
+                });
+
+        // obtain the RMC reference in the Naming service
+        RMCServer server = rmc.get();
 
         // test out the RMC connection
-        if (rmc == null || !rmc.registerLMSConnection(name)) {
+        if (server == null || !server.registerLMSConnection(name)) {
             throw new IllegalStateException("RMC Connection failed!");
         } else {
             logger.info("Made successful connection to RMC");
         }
 
+        // start forwarding to the RMC
+        forwarder = new RMCForwarder(rmc, lArgs.forwardSenders, lArgs.forwardQueue, lArgs.forwardFull,
+                lArgs.forwardInterval);
+
         // shutdown hook to unregister from the RMC
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 try {
-                    if(!rmc.removeLMSConnection(name)){
+                    if(!rmc.get().removeLMSConnection(name)){
                         logger.warn("Unable to unregister from RMC!");
                     }
                 } catch(Exception e) {
@@ -151,7 +298,19 @@ class LMSClient extends LMSPOA {
      */
     @Override
     public Alert[] alertLog() {
-        return alertLog.toArray(new Alert[alertLog.size()]);
+        return alertLog.snapshot();
+    }
+
+    /**
+     * Retrieves the current load of this LMS, as the number of readings
+     * received per second over the last few seconds. Sensors use this to
+     * pick the least loaded station.
+     *
+     * @return the int load
+     */
+    @Override
+    public int load() {
+        return loadMeter.rate();
     }
 
     /**
@@ -183,6 +342,114 @@ class LMSClient extends LMSPOA {
          */
         @Parameter(names = "-name", description = "Name of the Local Monitoring Station")
         public String name;
+
+        /**
+         * The key used to sign sensor session tokens.
+         */
+        @Parameter(names = "-session-key", description = "Key used to sign sensor sessions (defaults to a random key)")
+        public String sessionKey;
+
+        /**
+         * How long a sensor session token stays valid, in seconds.
+         */
+        @Parameter(names = "-session-ttl", description = "Seconds a sensor session stays valid (0 for no expiry)")
+        public long sessionTtl = 86400;
+
+        /**
+         * The readings per second accepted from each sensor.
+         */
+        @Parameter(names = "-rate", description = "Readings per second accepted from each sensor (0 is unlimited)")
+        public double rate = 0;
+
+        /**
+         * The readings a sensor may send at once before being limited.
+         */
+        @Parameter(names = "-burst", description = "Readings a sensor may send at once before being limited")
+        public int burst = 10;
+
+        /**
+         * What to do with readings over the limit.
+         */
+        @Parameter(names = "-overflow", description = "What to do with readings over the limit: drop or collapse (keep the latest)")
+        public String overflow = "collapse";
+
+        /**
+         * A levels file to load and watch for changes.
+         */
+        @Parameter(names = "-levels", description = "Path of a levels JSON file to load and reload on change (defaults to the bundled levels)")
+        public String levels;
+
+        /**
+         * The maximum number of alerts kept in the log.
+         */
+        @Parameter(names = "-log-size", description = "Maximum number of alerts kept in the alert log")
+        public int logSize = 10000;
+
+        /**
+         * The maximum age of alerts kept in the log.
+         */
+        @Parameter(names = "-log-age", description = "Maximum age (ms) of alerts kept in the alert log (0 keeps them regardless of age)")
+        public long logAge = 3600000;
+
+        /**
+         * The reporting interval of sensors in calm zones.
+         */
+        @Parameter(names = "-sample-calm", description = "Reporting interval (ms) of sensors in calm zones (0 leaves sensors to report on their own)")
+        public long sampleCalm = 0;
+
+        /**
+         * The reporting interval of sensors in zones nearing the warning level.
+         */
+        @Parameter(names = "-sample-warning", description = "Reporting interval (ms) of sensors in zones nearing the warning level")
+        public long sampleWarning = 5000;
+
+        /**
+         * The reporting interval of sensors in zones nearing the alert level.
+         */
+        @Parameter(names = "-sample-alert", description = "Reporting interval (ms) of sensors in zones nearing the alert level")
+        public long sampleAlert = 1000;
+
+        /**
+         * How close to a level a zone average must be to tighten the interval.
+         */
+        @Parameter(names = "-sample-margin", description = "How close to a level the zone average must be to tighten the interval")
+        public int sampleMargin = 5;
+
+        /**
+         * How much further a zone average must fall to relax the interval.
+         */
+        @Parameter(names = "-sample-hysteresis", description = "How far below the tightening point the zone average must fall to relax the interval")
+        public int sampleHysteresis = 3;
+
+        /**
+         * The number of threads sending to the RMC.
+         */
+        @Parameter(names = "-forward-senders", description = "Number of threads sending alerts to the RMC")
+        public int forwardSenders = 2;
+
+        /**
+         * The capacity of each sender's queue.
+         */
+        @Parameter(names = "-forward-queue", description = "Number of alerts each RMC sender may hold before the queue is full")
+        public int forwardQueue = 1000;
+
+        /**
+         * What to do when a sender's queue is full.
+         */
+        @Parameter(names = "-forward-full", description = "What to do when an RMC sender falls behind: block (briefly, then drop), drop-oldest or drop-newest")
+        public String forwardFull = "drop-oldest";
+
+        /**
+         * How often updates of alerting zones are sent to the RMC.
+         */
+        @Parameter(names = "-forward-interval", description = "How often (ms) the latest update of each alerting zone is sent to the RMC (0 sends every update)")
+        public long forwardInterval = 1000;
+
+        /**
+         * How far an alerting zone average must move before the RMC is updated.
+         */
+        @Parameter(names = "-alert-delta", description = "How far an alerting zone average must move before the RMC is sent an update")
+        public int alertDelta = 1;
     }
 
     /**
@@ -208,52 +475,89 @@ class LMSClient extends LMSPOA {
     }
 
     /**
-     * Returns the current alerted zones as an array.
+     * Attaches a Sensor reference, allowing this LMS to adjust how often
+     * the sensor reports as the state of its zone changes.
+     *
+     * @param meta the metadata of the sensor
+     * @param sensor the sensor reference
+     */
+    @Override
+    public void attachSensor(SensorMeta meta, Sensor sensor) {
+        logger.info("Attached Sensor #{} in zone `{}`", meta.sensor, meta.zone);
+        sampling.attach(meta.zone, meta.sensor, sensor);
+    }
+
+    /**
+     * Continues retrieval of a time range of the alert log, from a cursor
+     * returned by a previous call.
+     *
+     * @param zone the zone to query, or an empty String for every zone
+     * @param cursor the cursor to resume from
+     * @param to the time to stop before
+     * @param limit the maximum number of alerts to return
+     * @return an AlertPage of alerts and the next cursor (or -1)
+     */
+    @Override
+    public AlertPage getAlertPage(String zone, long cursor, long to, int limit) {
+        return alertLog.page(zone, cursor, to, limit);
+    }
+
+    /**
+     * Retrieves the alerts received within [from, to), optionally for a
+     * single zone, up to the given limit. The returned cursor can be used
+     * to fetch further pages.
+     *
+     * @param zone the zone to query, or an empty String for every zone
+     * @param from the earliest time to include
+     * @param to the time to stop before
+     * @param limit the maximum number of alerts to return
+     * @return an AlertPage of alerts and the next cursor (or -1)
+     */
+    @Override
+    public AlertPage getAlertRange(String zone, long from, long to, int limit) {
+        return alertLog.range(zone, from, to, limit);
+    }
+
+    /**
+     * Returns the current alerted zones as an array. The array is
+     * shared between callers, and only rebuilt after a change.
      *
      * @return an array of Alerts
      */
     @Override
     public Alert[] getCurrentState() {
-        // initialize an empty list
-        List<Alert> currentState = new ArrayList<>();
-        // for every zone in the alert states
-        for(Map.Entry<String, Alert> zone : alertStates.entrySet()){
-            // add the alert value
-            currentState.add(zone.getValue());
-        }
-        // return the list as an array
-        return currentState.toArray(new Alert[currentState.size()]);
+        // only rebuilt when a zone's alert state changes
+        return currentState.get();
     }
 
     /**
      * Returns a list of SensorMeta objects representing the
      * currently registered Sensors. This is derived via the
-     * zoneMapping, so it's not very efficient (O(n^2)) but
-     * it's better than needlessly storing yet another list.
+     * zoneMapping, which keeps ids in order, rather than
+     * needlessly storing yet another list. The array is shared
+     * between callers, and only rebuilt after a change.
      *
      * @return a SensorMeta[] instance
      */
     @Override
     public SensorMeta[] getRegisteredSensors() {
-        // create an empty list
-        List<SensorMeta> metaList = new ArrayList<>();
-        // loop all zone entries in the mapping
-        for(Map.Entry<String, ConcurrentSkipListMap<String, Reading>> zoneMap : zoneMapping.entrySet()){
-            // cast the keyset to a List
-            List<String> keySet = new ArrayList<>(zoneMap.getValue().keySet());
-            // sort the list
-            Collections.sort(keySet);
-            // for each key
-            for(String key : keySet){
-                // add a new SensorMeta entry
-                metaList.add(new SensorMeta(
-                        zoneMap.getKey(), key,
-                        LMSUtil.getLevelsForZone(levels, zoneMap.getKey()).getAlertLevel()
-                ));
-            }
-        }
-        // return the list cast to an array
-        return metaList.toArray(new SensorMeta[metaList.size()]);
+        // only rebuilt when sensors register or leave
+        return registeredSensors.get();
+    }
+
+    /**
+     * Returns the statistics of the readings received for a zone over the
+     * last 5, 15 and 60 minutes, shortest window first. Each window holds
+     * the count, mean, min and max of the readings, and the rate of rise
+     * of the mean per minute.
+     *
+     * @param zone the zone name
+     * @return a ZoneStatistics instance
+     */
+    @Override
+    public ZoneStatistics getZoneStatistics(String zone) {
+        ZoneState zoneState = zoneMapping.get(zone);
+        return new ZoneStatistics(zone, zoneState == null ? ZoneWindows.empty() : zoneState.windows().statistics());
     }
 
     /**
@@ -269,35 +573,148 @@ class LMSClient extends LMSPOA {
      */
     @Override
     public void receiveAlert(final Alert alert) {
+        // count towards the load
+        loadMeter.record(1);
+
+        // hold back anything over the sensor's rate
+        if(limiter != null && limiter.acquire(alert.meta, alert.reading, 1) == 0){
+            return;
+        }
+
+        acceptAlert(alert);
+    }
+
+    /**
+     * Processes an Alert which has made it past any rate limit, storing
+     * the reading against the sensor and updating the zone state.
+     *
+     * @param alert the received alert
+     */
+    private void acceptAlert(final Alert alert) {
         // log an acknowledgement
         logger.info("Received alert from sensor #{} in zone `{}`", alert.meta.sensorMeta.sensor, alert.meta.sensorMeta.zone);
 
-        // find the existing zone entry
-        ConcurrentSkipListMap<String, Reading> zone = zoneMapping.get(alert.meta.sensorMeta.zone);
+        // set the reading for this sensor
+        ZoneState zone = storeReading(alert.meta.sensorMeta, alert.reading);
 
-        // if there is one
-        if(zone != null){
-            // set a reading for this sensor
-            zone.put(alert.meta.sensorMeta.sensor, alert.reading);
-        } else {
-            // log potential warning because it might mean something is amiss
-            logger.warn("Adding measurement from previously unregistered zone: {}", alert.meta.sensorMeta.zone);
-            // create the new zone
-            zone = new ConcurrentSkipListMap<String, Reading>(){{
-                put(alert.meta.sensorMeta.sensor, alert.reading);
-            }};
-            // place it in the mapping
-            zoneMapping.put(alert.meta.sensorMeta.zone, zone);
+        // fold it into the zone statistics
+        zone.windows().record(alert.reading.time, alert.reading.measurement);
+
+        // add a copy to the log, as the zone average may replace the measurement
+        alertLog.add(new Alert(alert.meta, new Reading(alert.reading.time, alert.reading.measurement)));
+
+        // update the zone state
+        processZone(zone, alert);
+    }
+
+    /**
+     * Receives a batch of Readings from a single sensor. Every reading is
+     * added to the alert log, but only the latest reading is stored against
+     * the sensor, so the zone is evaluated (and the RMC contacted) just once
+     * for the whole batch.
+     *
+     * @param meta the metadata of the sending sensor
+     * @param readings the readings, oldest first
+     */
+    @Override
+    public void receiveReadings(MetaData meta, Reading[] readings) {
+        // nothing to do on an empty batch
+        if(readings.length == 0){
+            return;
         }
 
-        // add the alert to the log
-        alertLog.add(alert);
+        // count towards the load
+        loadMeter.record(readings.length);
 
-        // retrieve the assigned alert level for this zone
-        int alert_level = LMSUtil.getLevelsForZone(levels, alert.meta.sensorMeta.zone).getAlertLevel();
+        // only keep the newest readings within the sensor's rate
+        if(limiter != null){
+            int granted = limiter.acquire(meta, readings[readings.length - 1], readings.length);
+            if(granted == 0){
+                return;
+            }
+            readings = Arrays.copyOfRange(readings, readings.length - granted, readings.length);
+        }
+
+        // log an acknowledgement
+        logger.info("Received {} readings from sensor #{} in zone `{}`", new Object[]{ readings.length, meta.sensorMeta.sensor, meta.sensorMeta.zone });
+
+        // the latest reading is the one which counts
+        Reading latest = readings[readings.length - 1];
+
+        // set the reading for this sensor
+        ZoneState zone = storeReading(meta.sensorMeta, latest);
+
+        // add every reading to the log and the zone statistics
+        for(Reading reading : readings){
+            alertLog.add(new Alert(meta, reading));
+            zone.windows().record(reading.time, reading.measurement);
+        }
+
+        // update the zone state using a copy, to leave the log untouched
+        processZone(zone, new Alert(meta, new Reading(latest.time, latest.measurement)));
+    }
+
+    /**
+     * Oneway variant of {@link #receiveAlert(Alert)}. The sensor does not
+     * wait for the alert to be processed, so there is no confirmation.
+     *
+     * @param alert the received alert
+     */
+    @Override
+    public void submitAlert(Alert alert) {
+        receiveAlert(alert);
+    }
+
+    /**
+     * Oneway variant of {@link #receiveReadings(MetaData, Reading[])}. The
+     * sensor does not wait for the batch to be processed, so there is no
+     * confirmation.
+     *
+     * @param meta the metadata of the sending sensor
+     * @param readings the readings, oldest first
+     */
+    @Override
+    public void submitReadings(MetaData meta, Reading[] readings) {
+        receiveReadings(meta, readings);
+    }
+
+    /**
+     * Stores a Reading as the latest for the given sensor, creating
+     * the zone entry if this is a previously unseen zone.
+     *
+     * @param sensorMeta the sensor the reading belongs to
+     * @param reading the reading to store
+     * @return the zone entry the reading was stored in
+     */
+    private ZoneState storeReading(final SensorMeta sensorMeta, final Reading reading) {
+        // log potential warning because it might mean something is amiss
+        if(!zoneMapping.containsKey(sensorMeta.zone)){
+            logger.warn("Adding measurement from previously unregistered zone: {}", sensorMeta.zone);
+        }
+
+        // set a reading for this sensor, creating the zone if needed
+        ZoneState zone = zoneEntry(sensorMeta.zone);
+        if(zone.store(sensorMeta.sensor, reading)){
+            registeredSensors.invalidate();
+        }
+
+        return zone;
+    }
+
+    /**
+     * Logs a received Alert and evaluates the state of the zone it
+     * belongs to, as {@link #evaluate(ZoneState, Alert, ThresholdTable, int)}.
+     *
+     * @param zone the zone entry of the alert
+     * @param alert the latest alert for the zone
+     */
+    private void processZone(ZoneState zone, final Alert alert) {
+        // retrieve the assigned levels for this zone in a single lookup
+        ThresholdTable table = thresholds;
+        int slot = table.slot(alert.meta.sensorMeta.zone);
 
         // if the measurement is unsafe
-        if(alert.reading.measurement > alert_level){
+        if(alert.reading.measurement > table.alertLevel(slot)){
             // log out a warning
             logger.warn("Registered alert {} from Sensor #{}", alert.reading.measurement, alert.meta.sensorMeta.sensor);
         } else {
@@ -305,70 +722,133 @@ class LMSClient extends LMSPOA {
             logger.info("Registered reading {} from Sensor #{}", alert.reading.measurement, alert.meta.sensorMeta.sensor);
         }
 
-        // avg counter
-        int avg = 0;
+        evaluate(zone, alert, table, slot);
+    }
 
-        // sum all measurements
-        for(Map.Entry<String, Reading> zoneMap : zone.entrySet()){
-            avg += zoneMap.getValue().measurement;
-        }
+    /**
+     * Evaluates the state of the zone the passed Alert belongs to, and
+     * forwards an alert (or cancellation) to the RMC as appropriate. The
+     * Alert measurement is replaced with the zone average when forwarded.
+     *
+     * @param zone the zone entry of the alert
+     * @param alert the latest alert for the zone
+     * @param table the levels to evaluate against
+     * @param slot the slot of the zone in the levels
+     */
+    private void evaluate(ZoneState zone, final Alert alert, ThresholdTable table, int slot) {
+        // retrieve the assigned alert level for this zone
+        int alert_level = table.alertLevel(slot);
 
-        // get the number of sensors in the zone
-        int size = zone.size();
+        // figure out if the average across all sensors is above the alert_level and
+        // do not report if there is only a single sensor in operation. The RMC is
+        // only told about changes, deciding and queueing under the zone lock so
+        // that the RMC receives the changes in the order they were made.
+        int avg;
+        boolean alerting;
+        synchronized(zone){
+            avg = zone.average();
+            int size = zone.size();
 
-        // calculate the average (mean) based on sum/size
-        avg = Math.round((avg / size) * 100) / 100;
+            alerting = (avg >= alert_level && size > 2) || (avg > alert_level && size > 1);
 
-        // try ensure an RMC connection
-        try {
-            rmc.ping();
-        } catch(Exception e) {
-            rmc = NameServiceHandler.retrieveObject(
-                    nameService, Constants.REGIONAL_MONITORING_CENTRE, RMCServer.class);
-            if(rmc != null){
-                rmc.registerLMSConnection(name);
-            }
-        }
+            // remember who to attribute a later evaluation to
+            zone.evaluated(alert.meta);
 
-        // figure out if the average across all sensors is above the alert_level and
-        // do not report if there is only a single sensor in operation.
-        if((avg >= alert_level && size > 2) || (avg > alert_level && size > 1)){
+            // keep the local alert state in step with what the RMC is told
+            switch(zone.transition(alerting, avg, alertDelta)){
+                case ZoneState.ALERT:
+                    // log a warning message
+                    logger.warn("Average above alert level in zone `{}`, forwarding to RMC...", alert.meta.sensorMeta.zone);
+
+                    // set the reading measurement to the average
+                    alert.reading.measurement = avg;
 
-            // log a warning message
-            logger.warn("Average above alert level in zone `{}`, forwarding to RMC...", alert.meta.sensorMeta.zone);
+                    // forward to the RMC
+                    forwarder.alert(zone, alert);
+                    alerted(alert);
+                    break;
+                case ZoneState.UPDATE:
+                    // set the reading measurement to the average
+                    alert.reading.measurement = avg;
 
-            // set the reading measurement to the average
-            alert.reading.measurement = avg;
+                    // forward to the RMC, replacing any update not yet sent
+                    forwarder.update(zone, alert);
+                    alerted(alert);
+                    break;
+                case ZoneState.CANCEL:
+                    // try to cancel the alert
+                    forwarder.cancel(zone, new MetaData(name, alert.meta.sensorMeta));
 
-            // forward to the RMC
-            if(rmc != null) {
-                rmc.receiveAlert(alert);
-            } else {
-                // warn if unavailable
-                logger.warn("RMC is unreachable!");
+                    if(alertStates.remove(alert.meta.sensorMeta.zone) != null){
+                        currentState.invalidate();
+                        // log acknowledgement
+                        logger.info("Removed alert state for zone `{}`", alert.meta.sensorMeta.zone);
+                    }
+                    break;
             }
+        }
 
-            // add the average as an alert
-            alertStates.put(alert.meta.sensorMeta.zone, new Alert(alert.meta, new Reading(alert.reading.time, avg)));
-        } else {
+        // adjust how often the zone reports
+        sampling.update(alert.meta.sensorMeta.zone, avg, table.warningLevel(slot), alert_level);
+    }
 
-            // try to cancel the alert
-            if(rmc != null) {
-                rmc.cancelAlert(new MetaData(name, alert.meta.sensorMeta));
-            } else {
-                // warn if unavailable
-                logger.warn("RMC is unreachable!");
-            }
+    /**
+     * Records the average forwarded for an alerting zone as its alert state.
+     * Must be called under the lock of the zone.
+     *
+     * @param alert the forwarded alert, carrying the average
+     */
+    private void alerted(Alert alert) {
+        alertStates.put(alert.meta.sensorMeta.zone, new Alert(alert.meta, new Reading(alert.reading.time, alert.reading.measurement)));
+        currentState.invalidate();
+    }
 
-            // remove the alert from the alert states if it's there (might not be)
-            if(alertStates.containsKey(alert.meta.sensorMeta.zone)){
-                // log acknowledgement
-                logger.info("Removed alert state for zone `{}`", alert.meta.sensorMeta.zone);
-                // remove from the alert states
-                alertStates.remove(alert.meta.sensorMeta.zone);
+    /**
+     * Reloads the zone levels from a file, swapping them in as a whole and
+     * evaluating every known zone against them in parallel. If the file
+     * cannot be read, the current levels are kept.
+     *
+     * @param path the path of the levels file
+     */
+    private void reloadLevels(Path path) {
+        final ThresholdTable table;
+        try {
+            table = new ThresholdTable(LMSUtil.readZoneLevels(path));
+        } catch(IOException e) {
+            logger.warn("Unable to reload levels from `{}`, keeping the current levels: {}", path, e.getMessage());
+            return;
+        }
+
+        // swap in the new levels; registrations report the new alert level
+        thresholds = table;
+        registeredSensors.invalidate();
+
+        logger.info("Reloaded levels from `{}`, evaluating {} zone(s)", path, zoneMapping.size());
+
+        // evaluate each zone against the new levels
+        List<Callable<Void>> evaluations = new ArrayList<>();
+        for(final Map.Entry<String, ZoneState> entry : zoneMapping.entrySet()){
+            final MetaData meta = entry.getValue().lastEvaluated();
+            if(meta == null){
+                continue;
             }
+            evaluations.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int slot = table.slot(entry.getKey());
+                    SensorMeta sensorMeta = new SensorMeta(entry.getKey(), meta.sensorMeta.sensor, table.alertLevel(slot));
+                    evaluate(entry.getValue(), new Alert(new MetaData(meta.lms, sensorMeta),
+                            new Reading(System.currentTimeMillis(), 0)), table, slot);
+                    return null;
+                }
+            });
         }
 
+        try {
+            evaluator.invokeAll(evaluations);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -381,10 +861,21 @@ class LMSClient extends LMSPOA {
     public boolean removeSensor(SensorMeta sensorMeta) {
         // log out an info message
         logger.info("Removed Sensor #{} from zone `{}`", sensorMeta.sensor, sensorMeta.zone);
+        // stop adjusting its interval
+        sampling.detach(sensorMeta.zone, sensorMeta.sensor);
+        // its session can no longer be resumed
+        sessions.revoke(sensorMeta.zone, sensorMeta.sensor);
+        // nor does it need limiting
+        if(limiter != null){
+            limiter.remove(sensorMeta.zone, sensorMeta.sensor);
+        }
         // if the mapping contains the key
-        if(zoneMapping.containsKey(sensorMeta.zone)){
+        ZoneState zone = zoneMapping.get(sensorMeta.zone);
+        if(zone != null){
             // remove the sensor from the zone and short-circuit
-            zoneMapping.get(sensorMeta.zone).remove(sensorMeta.sensor);
+            if(zone.remove(sensorMeta.sensor)){
+                registeredSensors.invalidate();
+            }
             return true;
         }
         return false;
@@ -401,32 +892,183 @@ class LMSClient extends LMSPOA {
      */
     @Override
     public SensorMeta registerSensor(String zone) {
-        // create empty reading
-        final Reading reading = new Reading();
-        // identifier
-        final String id;
-
-        // if the mapping contains the zone name
-        if (zoneMapping.containsKey(zone)) {
-            // get the zone entry
-            ConcurrentSkipListMap<String, Reading> zoneMap = zoneMapping.get(zone);
-            // increment the counter
-            id = (zoneMap.size() + 1) + "";
-            // add a new mapping
-            zoneMap.put(id, reading);
-        } else {
-            // id starts at 1
-            id = "1";
-            // add a new mapping
-            zoneMapping.put(zone, new ConcurrentSkipListMap<String, Reading>() {{
-                put(id, reading);
-            }});
-        }
+        // take the next id, skipping ids held by resumed sessions
+        final String id = zoneEntry(zone).registerNext();
+        registeredSensors.invalidate();
+
         // log out the information
         logger.info("Added Sensor #{} to zone `{}`", id, zone);
 
         // return the new SensorMeta instance
-        return new SensorMeta(zone, id, LMSUtil.getLevelsForZone(levels, zone).getAlertLevel());
+        return new SensorMeta(zone, id, thresholds.alertLevel(zone));
+    }
+
+    /**
+     * Registers a batch of sensors in a zone with a single call, as
+     * {@link #registerSensor(String)} would for each. At most
+     * {@link #MAX_REGISTRATIONS} sensors are registered per call, so
+     * larger batches must be split by the caller.
+     *
+     * @param zone the zone the sensors are apart of.
+     * @param count the number of sensors to register.
+     * @return a SensorMeta[] instance, one per sensor.
+     */
+    @Override
+    public SensorMeta[] registerSensors(String zone, int count) {
+        ZoneState zoneState = zoneEntry(zone);
+        int level = thresholds.alertLevel(zone);
+
+        // take an id for each sensor
+        SensorMeta[] metas = new SensorMeta[Math.max(0, Math.min(count, MAX_REGISTRATIONS))];
+        for(int i = 0; i < metas.length; i++){
+            metas[i] = new SensorMeta(zone, zoneState.registerNext(), level);
+        }
+        registeredSensors.invalidate();
+
+        // log out the information
+        logger.info("Added {} sensors to zone `{}`", metas.length, zone);
+
+        return metas;
+    }
+
+    /**
+     * Registers a sensor with the LMS as {@link #registerSensor(String)},
+     * along with a session token the sensor can later use to resume its
+     * identity via {@link #resumeSession(String, String)}.
+     *
+     * @param zone the zone the sensor is apart of.
+     * @return a Session instance.
+     */
+    @Override
+    public Session openSession(String zone) {
+        SensorMeta meta = registerSensor(zone);
+        return new Session(meta, sessions.issue(zone, meta.sensor));
+    }
+
+    /**
+     * Opens sessions for a batch of sensors in a zone with a single call,
+     * as {@link #openSession(String)} would for each. At most
+     * {@link #MAX_REGISTRATIONS} sessions are opened per call, so larger
+     * batches must be split by the caller.
+     *
+     * @param zone the zone the sensors are apart of.
+     * @param count the number of sessions to open.
+     * @return a Session[] instance, one per sensor.
+     */
+    @Override
+    public Session[] openSessions(String zone, int count) {
+        SensorMeta[] metas = registerSensors(zone, count);
+
+        // issue a token for each sensor
+        Session[] opened = new Session[metas.length];
+        for(int i = 0; i < metas.length; i++){
+            opened[i] = new Session(metas[i], sessions.issue(zone, metas[i].sensor));
+        }
+
+        return opened;
+    }
+
+    /**
+     * Resumes the identity of a sensor from a previous session, such as
+     * after this LMS restarts. If the token is valid and its id is free
+     * (or still held by the same session), the sensor keeps its id;
+     * otherwise a new session is opened with a new id.
+     *
+     * @param zone the zone the sensor is apart of.
+     * @param token the token of the previous session.
+     * @return a Session instance.
+     */
+    @Override
+    public Session resumeSession(String zone, String token) {
+        Session session = resume(zone, token);
+        if(session != null){
+            logger.info("Resumed Sensor #{} in zone `{}`", session.meta.sensor, zone);
+            return session;
+        }
+
+        // otherwise start afresh
+        logger.info("Unable to resume session in zone `{}`, opening a new one", zone);
+        return openSession(zone);
+    }
+
+    /**
+     * Resumes the sessions of a batch of sensors in a zone with a single
+     * call, as {@link #resumeSession(String, String)} would for each. At
+     * most {@link #MAX_REGISTRATIONS} sessions are resumed per call, so
+     * larger batches must be split by the caller.
+     *
+     * @param zone the zone the sensors are apart of.
+     * @param tokens the tokens of the previous sessions.
+     * @return a Session[] instance, one per token, in the same order.
+     */
+    @Override
+    public Session[] resumeSessions(String zone, String[] tokens) {
+        Session[] resumed = new Session[Math.min(tokens.length, MAX_REGISTRATIONS)];
+
+        int fresh = 0;
+        for(int i = 0; i < resumed.length; i++){
+            resumed[i] = resume(zone, tokens[i]);
+
+            // otherwise start afresh
+            if(resumed[i] == null){
+                SensorMeta meta = new SensorMeta(zone, zoneEntry(zone).registerNext(), thresholds.alertLevel(zone));
+                resumed[i] = new Session(meta, sessions.issue(zone, meta.sensor));
+                registeredSensors.invalidate();
+                fresh++;
+            }
+        }
+
+        // log out the information
+        logger.info("Resumed {} sensors in zone `{}`, opened {} new sessions",
+                new Object[]{ resumed.length - fresh, zone, fresh });
+
+        return resumed;
+    }
+
+    /**
+     * Resumes the identity of a sensor from a token, if the token is valid
+     * and its id is free (or still held by the same session).
+     *
+     * @param zone the zone the sensor is apart of.
+     * @param token the token of the previous session.
+     * @return a Session instance, or null if it cannot be resumed.
+     */
+    private Session resume(String zone, String token) {
+        String id = sessions.verify(zone, token);
+        if(id == null){
+            return null;
+        }
+
+        // take the id back if it's free, or if it's still ours
+        boolean free = zoneEntry(zone).register(id);
+        if(free){
+            registeredSensors.invalidate();
+        }
+        if(!free && !sessions.isCurrent(zone, id, token)){
+            return null;
+        }
+
+        sessions.adopt(zone, id, token);
+        return new Session(new SensorMeta(zone, id, thresholds.alertLevel(zone)), token);
+    }
+
+    /**
+     * Retrieves the entry of a zone in the zoneMapping, creating an
+     * empty entry if this is the first sensor in the zone.
+     *
+     * @param zone the zone name
+     * @return the zone entry
+     */
+    private ZoneState zoneEntry(String zone) {
+        ZoneState zoneMap = zoneMapping.get(zone);
+        if(zoneMap == null){
+            ZoneState created = new ZoneState();
+            zoneMap = zoneMapping.putIfAbsent(zone, created);
+            if(zoneMap == null){
+                zoneMap = created;
+            }
+        }
+        return zoneMap;
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.zackehh.floodz.lms;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zackehh.floodz.common.Constants;
 import com.zackehh.floodz.common.util.Levels;
@@ -9,7 +10,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Utility class for the LMS to provide methods to parse out
@@ -23,22 +31,19 @@ class LMSUtil {
     private static final Logger logger = LoggerFactory.getLogger(LMSUtil.class);
 
     /**
-     * A mapper to read the resources files.
+     * How long to let writes to a watched levels file settle, in ms.
      */
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final long DEBOUNCE = 200;
 
     /**
-     * Retrieves the correct Levels instance to use for the current zone entry.
-     * If the map of zones does not include this zone, default to using a
-     * pre-required set of levels.
-     *
-     * @param levels the levels mapping
-     * @param zone the zone name
-     * @return a Levels instance
+     * The fields every zone in a levels file must set.
      */
-    public static Levels getLevelsForZone(HashMap<String, Levels> levels, String zone){
-        return !levels.containsKey(zone) ? levels.get("default") : levels.get(zone);
-    }
+    private static final String[] LEVEL_FIELDS = { "alert_level", "warning_level" };
+
+    /**
+     * A mapper to read the resources files.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     /**
      * Parses the levels JSON configuration file and returns it. If the file
@@ -59,7 +64,7 @@ class LMSUtil {
             logger.warn("Unable to retrieve level mapping, creating default...");
 
             // create a levels instance from the Constants
-            final Levels def = new Levels(Constants.DEFAULT_WARNING_LEVEL, Constants.DEFAULT_ALERT_LEVEL);
+            final Levels def = new Levels(Constants.DEFAULT_ALERT_LEVEL, Constants.DEFAULT_WARNING_LEVEL);
 
             // log an info message
             logger.info("Set default warning level to {}, alert level to {}", def.getWarningLevel(), def.getAlertLevel());
@@ -70,4 +75,83 @@ class LMSUtil {
             }};
         }
     }
+
+    /**
+     * Parses a levels JSON file from disk, in the same format as the
+     * bundled levels.json resource. Every zone must set both levels as
+     * integers; Jackson would otherwise fill a missing level with 0, which
+     * would put the zone into alert.
+     *
+     * @param path the path of the file
+     * @return a HashMap of <String, Levels>
+     * @throws IOException if the file cannot be read or parsed, or is missing a level
+     */
+    public static HashMap<String, Levels> readZoneLevels(Path path) throws IOException {
+        JsonNode root = mapper.readTree(path.toFile());
+        if(root == null || !root.isObject()){
+            throw new IOException("Levels must be an object of zone names to levels");
+        }
+
+        // check every zone sets both of its levels
+        Iterator<Map.Entry<String, JsonNode>> zones = root.fields();
+        while(zones.hasNext()){
+            Map.Entry<String, JsonNode> zone = zones.next();
+            for(String level : LEVEL_FIELDS){
+                if(!zone.getValue().path(level).isInt()){
+                    throw new IOException("Zone `" + zone.getKey() + "` must set `" + level + "` to an integer");
+                }
+            }
+        }
+
+        return mapper.convertValue(root, new TypeReference<HashMap<String, Levels>>() { });
+    }
+
+    /**
+     * Watches a levels file, running the passed task whenever the file is
+     * written or replaced. Bursts of events (as editors tend to produce) are
+     * collapsed into a single run. The watch runs on a daemon thread.
+     *
+     * @param path the path of the file
+     * @param onChange the task to run on a change
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    public static void watchZoneLevels(final Path path, final Runnable onChange) throws IOException {
+        final Path file = path.toAbsolutePath();
+        final WatchService watcher = file.getFileSystem().newWatchService();
+
+        // files can't be watched directly, only their directory
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(true){
+                    try {
+                        WatchKey key = watcher.take();
+
+                        // let a burst of writes settle, then gather the events
+                        Thread.sleep(DEBOUNCE);
+
+                        boolean changed = false;
+                        for(WatchEvent<?> event : key.pollEvents()){
+                            if(file.getFileName().equals(event.context())){
+                                changed = true;
+                            }
+                        }
+                        key.reset();
+
+                        if(changed){
+                            onChange.run();
+                        }
+                    } catch(InterruptedException e) {
+                        return;
+                    } catch(Exception e) {
+                        logger.warn("Unable to reload levels: {}", e.getMessage());
+                    }
+                }
+            }
+        }, "lms-levels-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
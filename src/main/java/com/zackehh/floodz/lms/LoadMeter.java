@@ -0,0 +1,72 @@
+package com.zackehh.floodz.lms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the rate of readings arriving at an LMS, as a cheap figure of
+ * how loaded the station is. Readings are counted into per-second slots
+ * of a small ring, and the rate is the average over the last few complete
+ * seconds, so recording is a couple of atomic operations and reading the
+ * rate never has to walk anything larger than the ring. A few readings
+ * may be lost as a slot is reused, which is fine for a load figure.
+ */
+class LoadMeter {
+
+    /**
+     * The number of complete seconds averaged over.
+     */
+    private static final int WINDOW = 5;
+
+    /**
+     * The number of slots in the ring (the window plus the current second).
+     */
+    private static final int SLOTS = WINDOW + 1;
+
+    /**
+     * The second each slot is currently counting.
+     */
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    /**
+     * The number of readings counted in each slot.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+
+    /**
+     * Records readings arriving now.
+     *
+     * @param readings the number of readings
+     */
+    public void record(int readings){
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % SLOTS);
+
+        // claim a stale slot for this second, resetting its count
+        long stamp = seconds.get(slot);
+        if(stamp != second && seconds.compareAndSet(slot, stamp, second)){
+            counts.set(slot, 0);
+        }
+
+        counts.addAndGet(slot, readings);
+    }
+
+    /**
+     * Returns the average number of readings per second over the last
+     * few complete seconds.
+     *
+     * @return the rate of readings per second
+     */
+    public int rate(){
+        long second = System.currentTimeMillis() / 1000;
+
+        long total = 0;
+        for(int i = 1; i <= WINDOW; i++){
+            int slot = (int) ((second - i) % SLOTS);
+            if(seconds.get(slot) == second - i){
+                total += counts.get(slot);
+            }
+        }
+
+        return (int) (total / WINDOW);
+    }
+}
@@ -0,0 +1,387 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.MetaData;
+import com.zackehh.corba.rmc.RMCServer;
+import com.zackehh.floodz.common.util.RemoteReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards alerts and cancellations to the RMC in the background, so that
+ * a slow or unreachable RMC never holds up the threads serving sensors.
+ *
+ * Updates are placed on one of several bounded queues, each drained by its
+ * own sender thread. A zone always maps to the same queue, so updates for
+ * a zone reach the RMC in the order they were made. When a queue is full,
+ * the configured policy either blocks the caller, drops the oldest queued
+ * update, or drops the new update. As callers queue while holding the lock
+ * of their zone, blocking stalls every sensor in the zone, so a blocked
+ * caller only waits a short while before dropping the update instead.
+ *
+ * Updates to the average of an alerting zone are coalesced: only the newest
+ * is held per zone, and held updates are flushed at a fixed interval, so the
+ * RMC sees a bounded rate of updates per zone however fast sensors report.
+ * Alerts and cancellations go out immediately, superseding anything held.
+ *
+ * When an update fails or is dropped, its zone is told it went unsent, so
+ * that the next evaluation of the zone brings the RMC back in line. Marking
+ * a zone unsent takes no lock: callers queue updates while holding the lock
+ * of their own zone, so taking the lock of another zone here could deadlock.
+ *
+ * Counts of queued, coalesced, sent, failed and dropped updates are kept and logged
+ * periodically, along with the deepest queue.
+ */
+class RMCForwarder {
+
+    /**
+     * How often to log metrics, in seconds.
+     */
+    private static final long REPORT_INTERVAL = 30;
+
+    /**
+     * How long the block policy waits for room in a queue, in ms.
+     */
+    private static final long BLOCK_TIMEOUT = 100;
+
+    /**
+     * Logging instance via log4j.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The RMC to forward to.
+     */
+    private final RemoteReference<RMCServer> rmc;
+
+    /**
+     * The queue of each sender.
+     */
+    private final List<BlockingQueue<Update>> queues = new ArrayList<>();
+
+    /**
+     * What to do when a queue is full: block, drop-oldest or drop-newest.
+     */
+    private final String policy;
+
+    /**
+     * The zones holding an update to flush.
+     */
+    private final ConcurrentLinkedQueue<ZoneState> held = new ConcurrentLinkedQueue<>();
+
+    /**
+     * How often held updates are flushed, in ms (0 sends every update immediately).
+     */
+    private final long interval;
+
+    /**
+     * The number of updates replaced by a newer one before being flushed.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The number of updates queued.
+     */
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * The number of updates sent.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * The number of updates which failed to send.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * The number of updates dropped because a queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The total time spent sending, in nanos.
+     */
+    private final AtomicLong sendTime = new AtomicLong();
+
+    /**
+     * Creates a new forwarder and starts its sender threads.
+     *
+     * @param rmc the RMC to forward to
+     * @param senders the number of sender threads
+     * @param capacity the capacity of each sender's queue
+     * @param policy what to do when a queue is full: block, drop-oldest or drop-newest
+     * @param interval how often to flush held updates in ms (0 sends updates immediately)
+     */
+    public RMCForwarder(RemoteReference<RMCServer> rmc, int senders, int capacity, String policy, long interval){
+        if(!policy.equals("block") && !policy.equals("drop-oldest") && !policy.equals("drop-newest")){
+            throw new IllegalArgumentException("Unrecognised full queue policy `" + policy + "`!");
+        }
+
+        this.rmc = rmc;
+        this.policy = policy;
+        this.interval = interval;
+
+        // start a sender per queue
+        for(int i = 0; i < Math.max(1, senders); i++){
+            final BlockingQueue<Update> queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+            queues.add(queue);
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(queue);
+                }
+            }, "lms-rmc-sender-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // flush held updates and log metrics regularly
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "lms-rmc-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if(interval > 0){
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            private long lastQueued = -1;
+
+            @Override
+            public void run() {
+                // stay quiet while idle
+                if(queued.get() != lastQueued){
+                    lastQueued = queued.get();
+                    logger.info("RMC forwarding: {}", summary());
+                }
+            }
+        }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues an alert for a zone to be sent to the RMC immediately,
+     * discarding any update held for the zone.
+     *
+     * @param zone the zone entry of the alert
+     * @param alert the alert to send
+     */
+    public void alert(ZoneState zone, Alert alert){
+        supersede(zone);
+        enqueue(alert.meta.sensorMeta.zone, new Update(zone, alert, null));
+    }
+
+    /**
+     * Queues the cancellation of an alert for a zone to be sent to the RMC
+     * immediately, discarding any update held for the zone.
+     *
+     * @param zone the zone entry of the cancellation
+     * @param meta the metadata of the cancellation
+     */
+    public void cancel(ZoneState zone, MetaData meta){
+        supersede(zone);
+        enqueue(meta.sensorMeta.zone, new Update(zone, null, meta));
+    }
+
+    /**
+     * Holds an updated alert for a zone until the next flush, replacing any
+     * update already held. Must be called under the lock of the zone.
+     *
+     * @param zone the zone entry of the alert
+     * @param alert the updated alert
+     */
+    public void update(ZoneState zone, Alert alert){
+        if(interval <= 0){
+            enqueue(alert.meta.sensorMeta.zone, new Update(zone, alert, null));
+        } else if(zone.hold(alert)){
+            held.add(zone);
+        } else {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a summary of the forwarding metrics.
+     *
+     * @return a String summary
+     */
+    public String summary(){
+        int depth = 0;
+        for(BlockingQueue<Update> queue : queues){
+            depth = Math.max(depth, queue.size());
+        }
+        long count = sent.get() + failed.get();
+        return String.format("queued=%d coalesced=%d sent=%d failed=%d dropped=%d deepest=%d mean=%.2fms",
+                queued.get(), coalesced.get(), sent.get(), failed.get(), dropped.get(), depth,
+                count == 0 ? 0.0 : sendTime.get() / 1e6 / count);
+    }
+
+    /**
+     * Discards any update held for a zone, as it is superseded.
+     *
+     * @param zone the zone entry
+     */
+    private void supersede(ZoneState zone){
+        if(zone.takePending() != null){
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues the update held by each zone, in the order the zones were first
+     * held. Each is taken and queued under the lock of its zone, so it cannot
+     * overtake an alert or cancellation made after it.
+     */
+    private void flush(){
+        for(ZoneState zone = held.poll(); zone != null; zone = held.poll()){
+            synchronized(zone){
+                Alert alert = zone.takePending();
+                if(alert != null){
+                    enqueue(alert.meta.sensorMeta.zone, new Update(zone, alert, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * Places an update on the queue of its zone, applying the full policy.
+     *
+     * @param zone the zone name
+     * @param update the update
+     */
+    private void enqueue(String zone, Update update){
+        BlockingQueue<Update> queue = queues.get((zone.hashCode() & Integer.MAX_VALUE) % queues.size());
+
+        queued.incrementAndGet();
+
+        switch(policy){
+            case "block":
+                // bounded, as the caller holds the lock of the zone
+                try {
+                    if(!queue.offer(update, BLOCK_TIMEOUT, TimeUnit.MILLISECONDS)){
+                        dropped(update);
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped(update);
+                }
+                break;
+            case "drop-newest":
+                if(!queue.offer(update)){
+                    dropped(update);
+                }
+                break;
+            default:
+                // make room by throwing away the oldest
+                while(!queue.offer(update)){
+                    Update oldest = queue.poll();
+                    if(oldest != null){
+                        dropped(oldest);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Sends updates from a queue to the RMC, forever.
+     *
+     * @param queue the queue to drain
+     */
+    private void drain(BlockingQueue<Update> queue){
+        while(true){
+            final Update update;
+            try {
+                update = queue.take();
+            } catch(InterruptedException e) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                rmc.invoke(new RemoteReference.RemoteCall<RMCServer, Void>() {
+                    @Override
+                    public Void call(RMCServer server) {
+                        if(update.alert != null){
+                            server.receiveAlert(update.alert);
+                        } else {
+                            server.cancelAlert(update.cancel);
+                        }
+                        return null;
+                    }
+                });
+                sent.incrementAndGet();
+            } catch(Exception e) {
+                // warn if unavailable
+                logger.warn("RMC is unreachable!");
+                failed.incrementAndGet();
+                update.zone.unsent();
+            }
+            sendTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records an update as dropped.
+     *
+     * @param update the dropped update
+     */
+    private void dropped(Update update){
+        dropped.incrementAndGet();
+        update.zone.unsent();
+    }
+
+    /**
+     * A single update waiting to be sent: either an alert or a cancellation.
+     */
+    private static class Update {
+
+        /**
+         * The zone entry the update belongs to.
+         */
+        private final ZoneState zone;
+
+        /**
+         * The alert to send, or null if this is a cancellation.
+         */
+        private final Alert alert;
+
+        /**
+         * The cancellation to send, or null if this is an alert.
+         */
+        private final MetaData cancel;
+
+        /**
+         * Creates a new update.
+         *
+         * @param zone the zone entry the update belongs to
+         * @param alert the alert to send (or null)
+         * @param cancel the cancellation to send (or null)
+         */
+        Update(ZoneState zone, Alert alert, MetaData cancel){
+            this.zone = zone;
+            this.alert = alert;
+            this.cancel = cancel;
+        }
+    }
+}
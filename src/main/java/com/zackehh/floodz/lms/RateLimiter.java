@@ -0,0 +1,541 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.common.MetaData;
+import com.zackehh.corba.common.Reading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of readings accepted from each sensor using a token
+ * bucket per sensor, so a single misbehaving sensor cannot flood the
+ * station. Readings over the limit are either dropped, or collapsed so
+ * that only the latest is kept and delivered once the sensor has tokens
+ * again.
+ *
+ * Buckets are kept in a handful of segments, each an open-addressing hash
+ * table of parallel arrays keyed by zone and sensor id, so there is no
+ * object per sensor and sensors in different segments never contend.
+ * Throttling is counted per sensor and reported periodically.
+ */
+class RateLimiter {
+
+    /**
+     * The number of segments (must be a power of two).
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The initial capacity of each segment (must be a power of two).
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * How often to report throttled sensors, in ms.
+     */
+    private static final long REPORT_INTERVAL = 10000;
+
+    /**
+     * Logging instance via log4j.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The rate tokens are added at, per nanosecond.
+     */
+    private final double rate;
+
+    /**
+     * The maximum number of tokens a bucket can hold.
+     */
+    private final double burst;
+
+    /**
+     * Whether readings over the limit are collapsed (otherwise dropped).
+     */
+    private final boolean collapse;
+
+    /**
+     * The segments holding the buckets.
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Where collapsed readings are delivered once allowed.
+     */
+    private final Delivery delivery;
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param rate the readings per second allowed per sensor
+     * @param burst the readings a sensor may send at once
+     * @param overflow what to do with readings over the limit: drop or collapse
+     * @param delivery where collapsed readings are delivered
+     */
+    public RateLimiter(double rate, int burst, String overflow, Delivery delivery){
+        if(!overflow.equals("drop") && !overflow.equals("collapse")){
+            throw new IllegalArgumentException("Unrecognised overflow `" + overflow + "`!");
+        }
+
+        this.rate = rate / 1e9;
+        this.burst = Math.max(1, burst);
+        this.collapse = overflow.equals("collapse");
+        this.delivery = delivery;
+
+        for(int i = 0; i < SEGMENTS; i++){
+            segments[i] = new Segment();
+        }
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "lms-limiter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // deliver collapsed readings as soon as tokens allow
+        if(collapse){
+            long interval = Math.max(10, Math.min(1000, (long) (1000 / rate)));
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        // report throttling regularly
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes tokens for readings from a sensor. Callers keep the newest of
+     * their readings up to the number granted, so the latest reading gets
+     * through whenever anything does. Any readings not granted are counted
+     * as throttled; when collapsing and nothing is granted, the latest
+     * reading is held back to be delivered later, replacing anything
+     * already held.
+     *
+     * @param meta the metadata of the sensor
+     * @param latest the latest of the readings
+     * @param permits the number of readings
+     * @return the number of readings allowed through, counting back from the newest
+     */
+    public int acquire(MetaData meta, Reading latest, int permits){
+        String key = key(meta.sensorMeta.zone, meta.sensorMeta.sensor);
+        Segment segment = segment(key);
+        long now = System.nanoTime();
+
+        synchronized(segment){
+            int slot = segment.slot(key, now, burst);
+
+            // take as many tokens as are available
+            double available = refill(segment, slot, now);
+            int granted = (int) Math.min(permits, Math.floor(available));
+            segment.tokens[slot] = available - granted;
+
+            if(granted < permits){
+                // count the overflow
+                segment.throttled[slot] += permits - granted;
+                segment.recent[slot] += permits - granted;
+            }
+
+            if(granted == 0){
+                // keep hold of the latest
+                if(collapse){
+                    segment.hold(slot, meta, latest);
+                }
+            } else {
+                // the latest gets through, so anything held back is out of date
+                segment.release(slot);
+            }
+
+            return granted;
+        }
+    }
+
+    /**
+     * Forgets the bucket of a sensor which has been removed.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     */
+    public void remove(String zone, String id){
+        String key = key(zone, id);
+        Segment segment = segment(key);
+        synchronized(segment){
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Delivers every held back reading whose sensor has a token again.
+     */
+    private void flush(){
+        long now = System.nanoTime();
+
+        for(Segment segment : segments){
+            List<MetaData> metas = new ArrayList<>();
+            List<Reading> readings = new ArrayList<>();
+
+            synchronized(segment){
+                if(segment.pending == 0){
+                    continue;
+                }
+                for(int slot = 0; slot < segment.keys.length; slot++){
+                    if(segment.heldReadings[slot] == null){
+                        continue;
+                    }
+                    double available = refill(segment, slot, now);
+                    if(available < 1){
+                        segment.tokens[slot] = available;
+                        continue;
+                    }
+                    segment.tokens[slot] = available - 1;
+                    metas.add(segment.heldMetas[slot]);
+                    readings.add(segment.heldReadings[slot]);
+                    segment.release(slot);
+                }
+            }
+
+            // deliver outside the lock
+            for(int i = 0; i < metas.size(); i++){
+                try {
+                    delivery.deliver(metas.get(i), readings.get(i));
+                } catch(Exception e) {
+                    logger.warn("Unable to deliver collapsed reading: {}", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs how many readings were throttled since the last report, and
+     * from how many sensors, naming the worst offender along with its
+     * total since it was first throttled.
+     */
+    private void report(){
+        long total = 0;
+        int sensors = 0;
+        String worst = null;
+        int worstCount = 0;
+        long worstTotal = 0;
+
+        for(Segment segment : segments){
+            synchronized(segment){
+                for(int slot = 0; slot < segment.keys.length; slot++){
+                    int recent = segment.recent[slot];
+                    if(segment.keys[slot] == null || recent == 0){
+                        continue;
+                    }
+                    total += recent;
+                    sensors++;
+                    if(recent > worstCount){
+                        worst = segment.keys[slot];
+                        worstCount = recent;
+                        worstTotal = segment.throttled[slot];
+                    }
+                    segment.recent[slot] = 0;
+                }
+            }
+        }
+
+        if(sensors > 0){
+            logger.warn("Throttled {} reading(s) from {} sensor(s), most from `{}` ({}, {} in total)",
+                    new Object[]{ total, sensors, worst, worstCount, worstTotal });
+        }
+    }
+
+    /**
+     * Tops up the bucket in a slot for the time passed since it was last
+     * topped up. Must be called holding the segment lock.
+     *
+     * @param segment the segment
+     * @param slot the slot of the bucket
+     * @param now the current time in nanos
+     * @return the tokens now available
+     */
+    private double refill(Segment segment, int slot, long now){
+        double available = Math.min(burst, segment.tokens[slot] + (now - segment.refilled[slot]) * rate);
+        segment.refilled[slot] = now;
+        return available;
+    }
+
+    /**
+     * Finds the segment a key belongs to.
+     *
+     * @param key the sensor key
+     * @return the Segment instance
+     */
+    private Segment segment(String key){
+        return segments[(hash(key) >>> 28) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Creates the key of a sensor.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @return the String key
+     */
+    private static String key(String zone, String id){
+        return zone + "/" + id;
+    }
+
+    /**
+     * Spreads the hash of a key, so both the high bits (picking the
+     * segment) and low bits (picking the slot) are well mixed.
+     *
+     * @param key the sensor key
+     * @return the spread hash
+     */
+    private static int hash(String key){
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * An open-addressing (linear probing) table of buckets, stored as
+     * parallel arrays indexed by slot.
+     */
+    private static class Segment {
+
+        /**
+         * The key in each slot, or null if the slot is free.
+         */
+        private String[] keys = new String[INITIAL_CAPACITY];
+
+        /**
+         * The tokens in each bucket.
+         */
+        private double[] tokens = new double[INITIAL_CAPACITY];
+
+        /**
+         * The time each bucket was last topped up, in nanos.
+         */
+        private long[] refilled = new long[INITIAL_CAPACITY];
+
+        /**
+         * The total readings throttled from each sensor.
+         */
+        private long[] throttled = new long[INITIAL_CAPACITY];
+
+        /**
+         * The readings throttled from each sensor since the last report.
+         */
+        private int[] recent = new int[INITIAL_CAPACITY];
+
+        /**
+         * The metadata of each held back reading.
+         */
+        private MetaData[] heldMetas = new MetaData[INITIAL_CAPACITY];
+
+        /**
+         * The held back reading of each sensor, if any.
+         */
+        private Reading[] heldReadings = new Reading[INITIAL_CAPACITY];
+
+        /**
+         * The number of used slots.
+         */
+        private int size;
+
+        /**
+         * The number of held back readings.
+         */
+        private int pending;
+
+        /**
+         * Finds the slot of a key, adding a full bucket if the key is new.
+         *
+         * @param key the sensor key
+         * @param now the current time in nanos
+         * @param burst the tokens a new bucket starts with
+         * @return the slot of the key
+         */
+        int slot(String key, long now, double burst){
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+
+            // probe until we find the key or a free slot
+            while(keys[slot] != null){
+                if(keys[slot].equals(key)){
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // grow when half full, and find the free slot again
+            if(size + 1 > keys.length / 2){
+                resize();
+                return slot(key, now, burst);
+            }
+
+            keys[slot] = key;
+            tokens[slot] = burst;
+            refilled[slot] = now;
+            size++;
+
+            return slot;
+        }
+
+        /**
+         * Holds back a reading in a slot, replacing any already held.
+         *
+         * @param slot the slot
+         * @param meta the metadata of the reading
+         * @param reading the reading
+         */
+        void hold(int slot, MetaData meta, Reading reading){
+            if(heldReadings[slot] == null){
+                pending++;
+            }
+            heldMetas[slot] = meta;
+            heldReadings[slot] = reading;
+        }
+
+        /**
+         * Drops any reading held back in a slot.
+         *
+         * @param slot the slot
+         */
+        void release(int slot){
+            if(heldReadings[slot] != null){
+                pending--;
+            }
+            heldMetas[slot] = null;
+            heldReadings[slot] = null;
+        }
+
+        /**
+         * Removes a key, shifting back any entries which probed past it so
+         * that lookups never need tombstones.
+         *
+         * @param key the sensor key
+         */
+        void remove(String key){
+            int mask = keys.length - 1;
+            int gap = hash(key) & mask;
+
+            // find the key
+            while(keys[gap] != null && !keys[gap].equals(key)){
+                gap = (gap + 1) & mask;
+            }
+            if(keys[gap] == null){
+                return;
+            }
+
+            release(gap);
+            size--;
+
+            // move later entries of the run back into the gap, where allowed
+            for(int slot = (gap + 1) & mask; keys[slot] != null; slot = (slot + 1) & mask){
+                int home = hash(keys[slot]) & mask;
+                boolean reachable = gap <= slot ? home > gap && home <= slot : home > gap || home <= slot;
+                if(!reachable){
+                    move(slot, gap);
+                    gap = slot;
+                }
+            }
+
+            clear(gap);
+        }
+
+        /**
+         * Moves an entry between slots.
+         *
+         * @param from the slot to move from
+         * @param to the slot to move to
+         */
+        private void move(int from, int to){
+            keys[to] = keys[from];
+            tokens[to] = tokens[from];
+            refilled[to] = refilled[from];
+            throttled[to] = throttled[from];
+            recent[to] = recent[from];
+            heldMetas[to] = heldMetas[from];
+            heldReadings[to] = heldReadings[from];
+        }
+
+        /**
+         * Empties a slot.
+         *
+         * @param slot the slot
+         */
+        private void clear(int slot){
+            keys[slot] = null;
+            heldMetas[slot] = null;
+            heldReadings[slot] = null;
+            throttled[slot] = 0;
+            recent[slot] = 0;
+        }
+
+        /**
+         * Doubles the capacity, re-inserting every entry.
+         */
+        private void resize(){
+            String[] oldKeys = keys;
+            double[] oldTokens = tokens;
+            long[] oldRefilled = refilled;
+            long[] oldThrottled = throttled;
+            int[] oldRecent = recent;
+            MetaData[] oldMetas = heldMetas;
+            Reading[] oldReadings = heldReadings;
+
+            int capacity = oldKeys.length * 2;
+            keys = new String[capacity];
+            tokens = new double[capacity];
+            refilled = new long[capacity];
+            throttled = new long[capacity];
+            recent = new int[capacity];
+            heldMetas = new MetaData[capacity];
+            heldReadings = new Reading[capacity];
+
+            int mask = capacity - 1;
+            for(int i = 0; i < oldKeys.length; i++){
+                if(oldKeys[i] == null){
+                    continue;
+                }
+                int slot = hash(oldKeys[i]) & mask;
+                while(keys[slot] != null){
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                tokens[slot] = oldTokens[i];
+                refilled[slot] = oldRefilled[i];
+                throttled[slot] = oldThrottled[i];
+                recent[slot] = oldRecent[i];
+                heldMetas[slot] = oldMetas[i];
+                heldReadings[slot] = oldReadings[i];
+            }
+        }
+    }
+
+    /**
+     * Receives readings which were held back and are now allowed.
+     */
+    interface Delivery {
+
+        /**
+         * Delivers a reading.
+         *
+         * @param meta the metadata of the sensor
+         * @param reading the reading
+         */
+        void deliver(MetaData meta, Reading reading);
+    }
+}
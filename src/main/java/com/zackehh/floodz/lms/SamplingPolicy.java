@@ -0,0 +1,223 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.sensor.Sensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decides how often the sensors of each zone should report, based on how
+ * close the zone average is to its warning and alert levels. Each zone sits
+ * in one of three tiers (calm, warning, alert); when a zone changes tier,
+ * the interval of the new tier is pushed to every attached sensor in it.
+ *
+ * A zone enters a tier once its average comes within the margin of the
+ * tier level, and only drops back once the average falls a further
+ * hysteresis below that, so a zone hovering around a level does not
+ * flap between intervals. Pushes happen in the background, so they never
+ * hold up the processing of readings.
+ */
+class SamplingPolicy {
+
+    /**
+     * The tier of a calm zone.
+     */
+    private static final int CALM = 0;
+
+    /**
+     * The tier of a zone nearing its warning level.
+     */
+    private static final int WARNING = 1;
+
+    /**
+     * The tier of a zone nearing its alert level.
+     */
+    private static final int ALERT = 2;
+
+    /**
+     * Logging instance via log4j.
+     */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The reporting interval (in ms) of each tier.
+     */
+    private final long[] intervals;
+
+    /**
+     * How close to a level the average must be to enter its tier.
+     */
+    private final int margin;
+
+    /**
+     * How far below a tier's entry point the average must fall to leave it.
+     */
+    private final int hysteresis;
+
+    /**
+     * The current tier of each zone.
+     */
+    private final ConcurrentHashMap<String, Integer> tiers = new ConcurrentHashMap<>();
+
+    /**
+     * The attached sensors of each zone, by sensor id.
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Sensor>> sensors = new ConcurrentHashMap<>();
+
+    /**
+     * The executor used to push intervals to sensors.
+     */
+    private final ExecutorService pusher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "lms-sampling");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Creates a new policy with the given tier intervals.
+     *
+     * @param calm the interval of calm zones in ms (0 leaves sensors to report on their own)
+     * @param warning the interval of zones nearing their warning level in ms
+     * @param alert the interval of zones nearing their alert level in ms
+     * @param margin how close to a level the average must be to enter its tier
+     * @param hysteresis how much further the average must fall to leave a tier
+     */
+    public SamplingPolicy(long calm, long warning, long alert, int margin, int hysteresis){
+        this.intervals = new long[]{ calm, warning, alert };
+        this.margin = margin;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Attaches a sensor, so that it receives interval changes for its zone.
+     * The sensor is immediately sent the current interval of the zone.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @param sensor the sensor reference
+     */
+    public void attach(String zone, String id, Sensor sensor){
+        ConcurrentHashMap<String, Sensor> zoneSensors = sensors.get(zone);
+        if(zoneSensors == null){
+            ConcurrentHashMap<String, Sensor> created = new ConcurrentHashMap<>();
+            zoneSensors = sensors.putIfAbsent(zone, created);
+            if(zoneSensors == null){
+                zoneSensors = created;
+            }
+        }
+        zoneSensors.put(id, sensor);
+
+        // bring the sensor in line with the rest of the zone
+        Integer tier = tiers.get(zone);
+        push(zone, id, sensor, intervals[tier == null ? CALM : tier]);
+    }
+
+    /**
+     * Detaches a sensor, so it no longer receives interval changes.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     */
+    public void detach(String zone, String id){
+        Map<String, Sensor> zoneSensors = sensors.get(zone);
+        if(zoneSensors != null){
+            zoneSensors.remove(id);
+        }
+    }
+
+    /**
+     * Updates the tier of a zone from its latest average, pushing the new
+     * interval to the sensors of the zone if the tier has changed.
+     *
+     * @param zone the zone name
+     * @param average the current zone average
+     * @param warningLevel the warning level of the zone
+     * @param alertLevel the alert level of the zone
+     */
+    public void update(String zone, int average, int warningLevel, int alertLevel){
+        Integer previous = tiers.get(zone);
+        int current = previous == null ? CALM : previous;
+        int next = tier(current, average, warningLevel, alertLevel);
+
+        // only push on a change, and only if nobody else got there first
+        if(next == current){
+            return;
+        }
+        if(previous == null ? tiers.putIfAbsent(zone, next) != null : !tiers.replace(zone, previous, next)){
+            return;
+        }
+
+        logger.info("Changing reporting interval in zone `{}` to {}ms", zone, intervals[next]);
+
+        Map<String, Sensor> zoneSensors = sensors.get(zone);
+        if(zoneSensors != null){
+            for(Map.Entry<String, Sensor> entry : zoneSensors.entrySet()){
+                push(zone, entry.getKey(), entry.getValue(), intervals[next]);
+            }
+        }
+    }
+
+    /**
+     * Works out the tier a zone should be in, applying hysteresis when
+     * moving down from the current tier.
+     *
+     * @param current the current tier
+     * @param average the zone average
+     * @param warningLevel the warning level of the zone
+     * @param alertLevel the alert level of the zone
+     * @return the new tier
+     */
+    private int tier(int current, int average, int warningLevel, int alertLevel){
+        int next = CALM;
+        for(int tier = ALERT; tier > CALM; tier--){
+            int level = tier == ALERT ? alertLevel : warningLevel;
+
+            // the current tier is harder to leave than it was to enter
+            int entry = level - margin;
+            if(tier <= current){
+                entry -= hysteresis;
+            }
+
+            if(average >= entry){
+                next = tier;
+                break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Pushes an interval to a sensor in the background, detaching the
+     * sensor if it can no longer be reached.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @param sensor the sensor reference
+     * @param interval the interval in ms
+     */
+    private void push(final String zone, final String id, final Sensor sensor, final long interval){
+        pusher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sensor.setReportingInterval(interval);
+                } catch(Exception e) {
+                    logger.debug("Unable to reach sensor #{} in zone `{}`: {}", new Object[]{ id, zone, e });
+                    // leave alone anything attached since under the same id
+                    Map<String, Sensor> zoneSensors = sensors.get(zone);
+                    if(zoneSensors != null){
+                        zoneSensors.remove(id, sensor);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,219 @@
+package com.zackehh.floodz.lms;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and checks the session tokens which let a sensor resume its
+ * identity (zone and id) after losing its LMS. A token is the sensor id,
+ * the time it was issued, a random nonce and a MAC over the zone, id, time
+ * and nonce, so it can be checked without any stored state; this means
+ * tokens are still valid after the LMS restarts, as long as the key stays
+ * the same. Without a configured key, a random key is generated, and
+ * tokens only last as long as the station.
+ *
+ * Tokens expire once older than the time to live. Removing a sensor revokes
+ * every token issued for it up to that moment, so a removed sensor cannot
+ * take its id back; revocations are forgotten once the tokens they cover
+ * would have expired anyway.
+ *
+ * The token most recently issued for each sensor is remembered, so that
+ * a sensor reconnecting to a station which still has it registered can
+ * be told apart from a different sensor now holding the same id.
+ */
+class SessionTokens {
+
+    /**
+     * The MAC algorithm used to sign tokens.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * The key used to sign tokens.
+     */
+    private final SecretKeySpec key;
+
+    /**
+     * How often to forget old revocations, in ms.
+     */
+    private static final long PRUNE_INTERVAL = 60000;
+
+    /**
+     * How long a token stays valid, in ms (0 for no expiry).
+     */
+    private final long ttl;
+
+    /**
+     * The time each removed sensor was revoked, keyed by zone and id.
+     */
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+
+    /**
+     * The last time old revocations were forgotten.
+     */
+    private volatile long pruned = System.currentTimeMillis();
+
+    /**
+     * The current token of each registered sensor, keyed by zone and id.
+     */
+    private final ConcurrentHashMap<String, String> current = new ConcurrentHashMap<>();
+
+    /**
+     * The source of token nonces.
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Creates a new token issuer with the given secret.
+     *
+     * @param secret the secret to sign tokens with, or null to use a random key
+     * @param ttl how long a token stays valid in ms (0 for no expiry)
+     */
+    public SessionTokens(String secret, long ttl){
+        byte[] material;
+        if(secret == null){
+            material = new byte[32];
+            random.nextBytes(material);
+        } else {
+            material = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(material, ALGORITHM);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Issues a new token for a sensor, replacing any previous token.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @return the String token
+     */
+    public String issue(String zone, String id){
+        String issued = Long.toHexString(System.currentTimeMillis());
+        String nonce = Long.toHexString(random.nextLong());
+        String token = id + "." + issued + "." + nonce + "." + sign(zone, id, issued, nonce);
+        current.put(zone + "/" + id, token);
+        return token;
+    }
+
+    /**
+     * Checks a token presented for a zone, rejecting tokens which are
+     * forged, expired, or were issued before their sensor was removed.
+     *
+     * @param zone the zone of the sensor
+     * @param token the presented token
+     * @return the sensor id the token is for, or null if invalid
+     */
+    public String verify(String zone, String token){
+        // split out the id, issue time, nonce and signature
+        String[] parts = token.split("\\.");
+        if(parts.length != 4 || parts[0].isEmpty()){
+            return null;
+        }
+        String id = parts[0];
+
+        // compare in constant time
+        byte[] expected = sign(zone, id, parts[1], parts[2]).getBytes(StandardCharsets.UTF_8);
+        if(!MessageDigest.isEqual(expected, parts[3].getBytes(StandardCharsets.UTF_8))){
+            return null;
+        }
+
+        // the signature vouches for the issue time
+        long issued;
+        try {
+            issued = Long.parseLong(parts[1], 16);
+        } catch(NumberFormatException e) {
+            return null;
+        }
+
+        // too old
+        if(ttl > 0 && System.currentTimeMillis() - issued > ttl){
+            return null;
+        }
+
+        // issued before the sensor was removed
+        Long revokedAt = revoked.get(zone + "/" + id);
+        if(revokedAt != null && issued <= revokedAt){
+            return null;
+        }
+
+        return id;
+    }
+
+    /**
+     * Determines whether a token is the one currently held by a sensor.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @param token the presented token
+     * @return true if the token is current
+     */
+    public boolean isCurrent(String zone, String id, String token){
+        return token.equals(current.get(zone + "/" + id));
+    }
+
+    /**
+     * Records a resumed token as the current token of a sensor.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @param token the resumed token
+     */
+    public void adopt(String zone, String id, String token){
+        current.put(zone + "/" + id, token);
+    }
+
+    /**
+     * Revokes every token issued so far for a sensor which has been removed.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     */
+    public void revoke(String zone, String id){
+        long now = System.currentTimeMillis();
+        current.remove(zone + "/" + id);
+        revoked.put(zone + "/" + id, now);
+
+        // forget revocations whose tokens have all expired
+        if(ttl > 0 && now - pruned > PRUNE_INTERVAL){
+            pruned = now;
+            for(Map.Entry<String, Long> entry : revoked.entrySet()){
+                if(now - entry.getValue() > ttl){
+                    revoked.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Signs the parts of a token.
+     *
+     * @param zone the zone of the sensor
+     * @param id the id of the sensor
+     * @param issued the issue time of the token, as hex
+     * @param nonce the token nonce
+     * @return the signature as hex
+     */
+    private String sign(String zone, String id, String issued, String nonce){
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] digest = mac.doFinal((zone + "\n" + id + "\n" + issued + "\n" + nonce).getBytes(StandardCharsets.UTF_8));
+
+            // convert to hex
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest){
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign session token!", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.zackehh.floodz.lms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A cached, ready-to-return copy of some state, which is only rebuilt when
+ * the state has been marked as changed since the copy was made. Reads of an
+ * unchanged state return the same instance without doing any work.
+ *
+ * Every change bumps a version number. A copy remembers the version it was
+ * built from, so a change made while a copy is being built simply causes
+ * the next read to build again, and an older copy never replaces a newer one.
+ * Callers must treat the returned value as immutable.
+ *
+ * @param <T> the type of the copy
+ */
+abstract class Snapshot<T> {
+
+    /**
+     * The version of the state, bumped on every change.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * The latest copy built, or null if none has been built yet.
+     */
+    private final AtomicReference<Built<T>> latest = new AtomicReference<>();
+
+    /**
+     * Marks the state as changed, so the next read rebuilds the copy.
+     */
+    public void invalidate(){
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns a copy of the current state, building one only if the state
+     * has changed since the last copy.
+     *
+     * @return the copy
+     */
+    public T get(){
+        int current = version.get();
+
+        Built<T> built = latest.get();
+        if(built != null && built.version == current){
+            return built.value;
+        }
+
+        // build from the version read above; later changes bump the version again
+        Built<T> fresh = new Built<>(current, build());
+
+        // publish, unless someone already published something at least as new
+        while(built == null || built.version - current < 0){
+            if(latest.compareAndSet(built, fresh)){
+                break;
+            }
+            built = latest.get();
+        }
+
+        return fresh.value;
+    }
+
+    /**
+     * Builds a new copy of the state.
+     *
+     * @return the copy
+     */
+    protected abstract T build();
+
+    /**
+     * A copy along with the version it was built from.
+     *
+     * @param <T> the type of the copy
+     */
+    private static class Built<T> {
+
+        /**
+         * The version the copy was built from.
+         */
+        private final int version;
+
+        /**
+         * The copy itself.
+         */
+        private final T value;
+
+        /**
+         * Creates a new built copy.
+         *
+         * @param version the version the copy was built from
+         * @param value the copy
+         */
+        Built(int version, T value){
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.floodz.common.Constants;
+import com.zackehh.floodz.common.util.Levels;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable table of the warning and alert levels of each zone, held as
+ * primitive ints. Each zone is given a slot, so a single lookup finds both
+ * of its levels; zones without levels of their own share the default slot.
+ *
+ * Being immutable, a table can be read by any number of threads while a
+ * replacement is built, and swapped in with a single write.
+ */
+class ThresholdTable {
+
+    /**
+     * The name of the entry holding the default levels.
+     */
+    private static final String DEFAULT = "default";
+
+    /**
+     * The slot of each zone with levels of its own.
+     */
+    private final HashMap<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The alert level of each slot.
+     */
+    private final int[] alertLevels;
+
+    /**
+     * The warning level of each slot.
+     */
+    private final int[] warningLevels;
+
+    /**
+     * Creates a table from a map of levels by zone name. The "default"
+     * entry applies to any other zone, falling back to the levels in
+     * Constants if there is no such entry.
+     *
+     * @param levels the levels of each zone
+     */
+    public ThresholdTable(Map<String, Levels> levels){
+        alertLevels = new int[levels.size() + 1];
+        warningLevels = new int[levels.size() + 1];
+
+        // the default always lives in the first slot
+        Levels def = levels.get(DEFAULT);
+        alertLevels[0] = def == null ? Constants.DEFAULT_ALERT_LEVEL : def.getAlertLevel();
+        warningLevels[0] = def == null ? Constants.DEFAULT_WARNING_LEVEL : def.getWarningLevel();
+
+        int slot = 1;
+        for(Map.Entry<String, Levels> entry : levels.entrySet()){
+            if(entry.getKey().equals(DEFAULT)){
+                continue;
+            }
+            slots.put(entry.getKey(), slot);
+            alertLevels[slot] = entry.getValue().getAlertLevel();
+            warningLevels[slot] = entry.getValue().getWarningLevel();
+            slot++;
+        }
+    }
+
+    /**
+     * Returns the slot holding the levels of a zone.
+     *
+     * @param zone the zone name
+     * @return the int slot
+     */
+    public int slot(String zone){
+        Integer slot = slots.get(zone);
+        return slot == null ? 0 : slot;
+    }
+
+    /**
+     * Returns the alert level of a slot.
+     *
+     * @param slot the slot, from {@link #slot(String)}
+     * @return the int alert level
+     */
+    public int alertLevel(int slot){
+        return alertLevels[slot];
+    }
+
+    /**
+     * Returns the warning level of a slot.
+     *
+     * @param slot the slot, from {@link #slot(String)}
+     * @return the int warning level
+     */
+    public int warningLevel(int slot){
+        return warningLevels[slot];
+    }
+
+    /**
+     * Returns the alert level of a zone.
+     *
+     * @param zone the zone name
+     * @return the int alert level
+     */
+    public int alertLevel(String zone){
+        return alertLevels[slot(zone)];
+    }
+}
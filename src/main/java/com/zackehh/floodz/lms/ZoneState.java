@@ -0,0 +1,292 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.MetaData;
+import com.zackehh.corba.common.Reading;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of a single zone: the latest Reading of every registered
+ * sensor, plus a running sum of their measurements. The sum is adjusted
+ * by the difference whenever a reading is stored, replaced or removed,
+ * so the zone average is available in O(1) no matter how many sensors
+ * the zone holds.
+ *
+ * Updates to a zone are made under the lock of that zone, which keeps the
+ * readings and the sum consistent with each other; different zones never
+ * contend. Registration is the exception: it only adds an empty reading,
+ * which cannot disturb the sum, so it takes new ids from an atomic
+ * sequence without locking at all.
+ *
+ * The zone also remembers what the RMC was last told about it, so that the
+ * RMC only hears about the zone when its alert state changes or its average
+ * moves while alerting.
+ */
+class ZoneState {
+
+    /**
+     * Nothing needs to be sent to the RMC.
+     */
+    public static final int NONE = 0;
+
+    /**
+     * The zone has started alerting, which needs to be sent to the RMC.
+     */
+    public static final int ALERT = 1;
+
+    /**
+     * The zone has stopped alerting, which needs to be sent to the RMC.
+     */
+    public static final int CANCEL = 2;
+
+    /**
+     * The average of an alerting zone has moved, which needs to be sent to the RMC.
+     */
+    public static final int UPDATE = 3;
+
+    /**
+     * The latest reading of each sensor, by sensor id.
+     */
+    private final ConcurrentSkipListMap<String, Reading> readings = new ConcurrentSkipListMap<>();
+
+    /**
+     * Sliding-window statistics of every reading received for the zone.
+     */
+    private final ZoneWindows windows = new ZoneWindows();
+
+    /**
+     * The sum of the latest measurement of every sensor.
+     */
+    private long sum;
+
+    /**
+     * The number of registered sensors (the size of a skip list is O(n)).
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * The last id handed out by {@link #registerNext()}.
+     */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * Whether the RMC was last told the zone is alerting, or null if the
+     * RMC has not been told anything reliable about the zone.
+     */
+    private Boolean alerting;
+
+    /**
+     * The average last sent to the RMC while alerting.
+     */
+    private int forwarded;
+
+    /**
+     * Set when an update for the zone failed or was dropped, so the next
+     * evaluation is sent regardless. Atomic rather than guarded by the zone
+     * lock, as it is set from sender threads which must never take it.
+     */
+    private final AtomicBoolean resend = new AtomicBoolean();
+
+    /**
+     * The newest update waiting to be sent to the RMC, if any.
+     */
+    private Alert pending;
+
+    /**
+     * The metadata of the latest alert evaluated against the zone.
+     */
+    private MetaData latest;
+
+    /**
+     * Registers a sensor under the given id, with an empty reading. This
+     * takes no lock, as an empty reading adds nothing to the sum.
+     *
+     * @param id the id of the sensor
+     * @return true if the id was free
+     */
+    public boolean register(String id){
+        if(readings.putIfAbsent(id, new Reading()) != null){
+            return false;
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Registers a sensor under the next id of the zone's sequence, skipping
+     * ids held by resumed sessions. Ids are never handed out twice, even
+     * after a sensor is removed, and concurrent callers never contend on a
+     * lock.
+     *
+     * @return the String id assigned
+     */
+    public String registerNext(){
+        String id;
+        do {
+            id = Integer.toString(sequence.incrementAndGet());
+        } while(!register(id));
+        return id;
+    }
+
+    /**
+     * Stores a reading as the latest for a sensor, registering the sensor
+     * if it was previously unknown. A copy is stored, so that later changes
+     * to the passed Reading cannot put the sum out of step.
+     *
+     * @param id the id of the sensor
+     * @param reading the reading to store
+     * @return true if the sensor was previously unknown
+     */
+    public synchronized boolean store(String id, Reading reading){
+        Reading previous = readings.put(id, new Reading(reading.time, reading.measurement));
+        if(previous == null){
+            count.incrementAndGet();
+        }
+        sum += reading.measurement - (previous == null ? 0 : previous.measurement);
+        return previous == null;
+    }
+
+    /**
+     * Removes a sensor from the zone.
+     *
+     * @param id the id of the sensor
+     * @return true if the sensor was registered
+     */
+    public synchronized boolean remove(String id){
+        Reading previous = readings.remove(id);
+        if(previous == null){
+            return false;
+        }
+        sum -= previous.measurement;
+        count.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the number of sensors in the zone.
+     *
+     * @return the int size
+     */
+    public synchronized int size(){
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of the latest measurement of every sensor,
+     * rounded down, or 0 if the zone is empty.
+     *
+     * @return the int average
+     */
+    public synchronized int average(){
+        int sensors = count.get();
+        return sensors == 0 ? 0 : (int) (sum / sensors);
+    }
+
+    /**
+     * Returns the sliding-window statistics of the zone.
+     *
+     * @return the ZoneWindows of the zone
+     */
+    public ZoneWindows windows(){
+        return windows;
+    }
+
+    /**
+     * Returns the ids of the registered sensors, in order.
+     *
+     * @return a NavigableSet of ids
+     */
+    public NavigableSet<String> ids(){
+        return readings.keySet();
+    }
+
+    /**
+     * Decides what the RMC needs to hear about the zone, given whether the
+     * zone is now alerting, and records it as sent. Only a change of state,
+     * or a move of at least delta in the average while alerting, needs to
+     * be sent.
+     *
+     * @param alert whether the zone is now alerting
+     * @param average the current zone average
+     * @param delta how far the average must move to send an update
+     * @return NONE, ALERT, CANCEL or UPDATE
+     */
+    public synchronized int transition(boolean alert, int average, int delta){
+        // forget what the RMC was told if it never arrived
+        if(resend.getAndSet(false)){
+            alerting = null;
+        }
+
+        // the first evaluation is always sent, to bring the RMC in line
+        if(alerting == null || alerting != alert){
+            alerting = alert;
+            forwarded = average;
+            return alert ? ALERT : CANCEL;
+        }
+
+        // an ongoing alert is only resent when the average moves enough
+        if(alert && Math.abs(average - forwarded) >= delta){
+            forwarded = average;
+            return UPDATE;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Forgets what the RMC was last told, so that the next evaluation of
+     * the zone is sent regardless. Used when a send to the RMC fails or is
+     * dropped; takes no lock, so it is safe to call while holding the lock
+     * of another zone.
+     */
+    public void unsent(){
+        resend.set(true);
+    }
+
+    /**
+     * Remembers the metadata of the latest alert evaluated against the
+     * zone, so the zone can be evaluated again without a new alert.
+     *
+     * @param meta the metadata of the alert
+     */
+    public synchronized void evaluated(MetaData meta){
+        latest = meta;
+    }
+
+    /**
+     * Returns the metadata of the latest alert evaluated against the zone.
+     *
+     * @return the MetaData, or null if the zone was never evaluated
+     */
+    public synchronized MetaData lastEvaluated(){
+        return latest;
+    }
+
+    /**
+     * Holds an update until it is next flushed, replacing any update which
+     * was already waiting.
+     *
+     * @param update the update to hold
+     * @return true if no update was already waiting
+     */
+    public synchronized boolean hold(Alert update){
+        Alert previous = pending;
+        pending = update;
+        return previous == null;
+    }
+
+    /**
+     * Takes the update waiting to be sent, if any.
+     *
+     * @return the waiting Alert, or null
+     */
+    public synchronized Alert takePending(){
+        Alert update = pending;
+        pending = null;
+        return update;
+    }
+}
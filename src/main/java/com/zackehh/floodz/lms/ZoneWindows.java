@@ -0,0 +1,175 @@
+package com.zackehh.floodz.lms;
+
+import com.zackehh.corba.common.ZoneWindow;
+
+/**
+ * Sliding-window statistics of the readings received for a single zone,
+ * covering the last 5, 15 and 60 minutes.
+ *
+ * Readings are folded into a ring of fixed-length time buckets as they
+ * arrive, each bucket keeping the count, sum, min and max of its readings.
+ * A bucket is reset when the ring wraps around onto it, so old readings fall
+ * out of the windows on their own. Querying a window only combines its
+ * buckets, so no query ever revisits the readings themselves.
+ */
+class ZoneWindows {
+
+    /**
+     * The length of each bucket, in ms.
+     */
+    private static final long BUCKET = 10000;
+
+    /**
+     * The length of each window, in ms.
+     */
+    private static final long[] SPANS = { 5 * 60000, 15 * 60000, 60 * 60000 };
+
+    /**
+     * The number of buckets in the ring, enough for the longest window.
+     */
+    private static final int BUCKETS = (int) (SPANS[SPANS.length - 1] / BUCKET);
+
+    /**
+     * The bucket number (time / BUCKET) each slot currently holds.
+     */
+    private final long[] epochs = new long[BUCKETS];
+
+    /**
+     * The number of readings in each slot.
+     */
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * The sum of the readings in each slot.
+     */
+    private final long[] sums = new long[BUCKETS];
+
+    /**
+     * The lowest reading in each slot.
+     */
+    private final int[] mins = new int[BUCKETS];
+
+    /**
+     * The highest reading in each slot.
+     */
+    private final int[] maxes = new int[BUCKETS];
+
+    /**
+     * Creates a new, empty set of windows.
+     */
+    public ZoneWindows(){
+        // mark every slot as never used
+        for(int i = 0; i < BUCKETS; i++){
+            epochs[i] = -1;
+        }
+    }
+
+    /**
+     * Folds a reading into the bucket of its time. Readings from the future
+     * count towards the current bucket, and readings too old to fall in any
+     * window are ignored.
+     *
+     * @param time the time of the reading
+     * @param measurement the measurement of the reading
+     */
+    public synchronized void record(long time, int measurement){
+        long now = System.currentTimeMillis() / BUCKET;
+        long bucket = Math.min(time / BUCKET, now);
+        if(bucket <= now - BUCKETS){
+            return;
+        }
+
+        int slot = (int) (bucket % BUCKETS);
+
+        // start afresh if the slot still holds an older bucket
+        if(epochs[slot] != bucket){
+            if(epochs[slot] > bucket){
+                // a newer bucket already took the slot, so this one has expired
+                return;
+            }
+            epochs[slot] = bucket;
+            counts[slot] = 0;
+            sums[slot] = 0;
+            mins[slot] = measurement;
+            maxes[slot] = measurement;
+        }
+
+        counts[slot]++;
+        sums[slot] += measurement;
+        mins[slot] = Math.min(mins[slot], measurement);
+        maxes[slot] = Math.max(maxes[slot], measurement);
+    }
+
+    /**
+     * Returns the statistics of every window, shortest first.
+     *
+     * @return an array of ZoneWindow instances
+     */
+    public synchronized ZoneWindow[] statistics(){
+        long now = System.currentTimeMillis() / BUCKET;
+
+        ZoneWindow[] windows = new ZoneWindow[SPANS.length];
+        for(int i = 0; i < SPANS.length; i++){
+            windows[i] = window(now, SPANS[i]);
+        }
+        return windows;
+    }
+
+    /**
+     * Returns empty statistics for every window, for a zone without readings.
+     *
+     * @return an array of ZoneWindow instances
+     */
+    public static ZoneWindow[] empty(){
+        ZoneWindow[] windows = new ZoneWindow[SPANS.length];
+        for(int i = 0; i < SPANS.length; i++){
+            windows[i] = new ZoneWindow(SPANS[i], 0, 0, 0, 0, 0);
+        }
+        return windows;
+    }
+
+    /**
+     * Combines the buckets of a single window ending at the current bucket.
+     * The rate of rise compares the means of the oldest and newest buckets
+     * holding readings, per minute between them.
+     *
+     * @param now the current bucket number
+     * @param span the length of the window in ms
+     * @return a ZoneWindow instance
+     */
+    private ZoneWindow window(long now, long span){
+        long count = 0, sum = 0;
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        int first = -1, last = -1;
+
+        for(long bucket = now - span / BUCKET + 1; bucket <= now; bucket++){
+            int slot = (int) (bucket % BUCKETS);
+            if(bucket < 0 || epochs[slot] != bucket){
+                continue;
+            }
+
+            count += counts[slot];
+            sum += sums[slot];
+            min = Math.min(min, mins[slot]);
+            max = Math.max(max, maxes[slot]);
+
+            if(first == -1){
+                first = slot;
+            }
+            last = slot;
+        }
+
+        // nothing received within the window
+        if(count == 0){
+            return new ZoneWindow(span, 0, 0, 0, 0, 0);
+        }
+
+        double rise = 0;
+        if(first != last){
+            double minutes = (epochs[last] - epochs[first]) * BUCKET / 60000.0;
+            rise = ((double) sums[last] / counts[last] - (double) sums[first] / counts[first]) / minutes;
+        }
+
+        return new ZoneWindow(span, count, (double) sum / count, min, max, rise);
+    }
+}
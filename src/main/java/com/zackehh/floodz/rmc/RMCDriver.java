@@ -8,6 +8,7 @@ import com.zackehh.corba.rmc.RMCServerPOA;
 import com.zackehh.corba.rmc.RMCClient;
 import com.zackehh.floodz.common.Constants;
 import com.zackehh.floodz.common.util.NameServiceHandler;
+import com.zackehh.floodz.common.util.RemoteReference;
 import com.zackehh.floodz.util.SQLiteClient;
 import org.omg.CORBA.ORB;
 import org.omg.CosNaming.NamingContextExt;
@@ -19,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The main handling behind an RMC. Allows registration of Alerts
@@ -34,6 +36,11 @@ public class RMCDriver extends RMCServerPOA {
      */
     private final HashSet<String> localStations = new HashSet<>();
 
+    /**
+     * Cached references to the known local stations, keyed by name.
+     */
+    private final ConcurrentHashMap<String, RemoteReference<LMS>> stationRefs = new ConcurrentHashMap<>();
+
     /**
      * The list of connected clients.
      */
@@ -330,6 +337,7 @@ public class RMCDriver extends RMCServerPOA {
         logger.info("Removed connection from LMS `{}`", name);
         sqLiteClient.deleteAlert(name, null, null);
         localStations.remove(name);
+        stationRefs.remove(name);
         return true;
     }
 
@@ -371,9 +379,13 @@ public class RMCDriver extends RMCServerPOA {
      */
     @Override
     public Alert[] getDistrictState(String district) {
-        LMS lms = getConnectedLMS(district);
         try {
-            return lms != null && lms.ping() ? lms.getCurrentState() : null;
+            return getStationReference(district).invoke(new RemoteReference.RemoteCall<LMS, Alert[]>() {
+                @Override
+                public Alert[] call(LMS lms) {
+                    return lms.getCurrentState();
+                }
+            });
         } catch(Exception e) {
             return null;
         }
@@ -401,6 +413,24 @@ public class RMCDriver extends RMCServerPOA {
         return NameServiceHandler.retrieveObject(nameService, name, LMS.class);
     }
 
+    /**
+     * Retrieves the cached reference to an LMS, creating it on first use.
+     *
+     * @param name the name of the LMS
+     * @return a RemoteReference to the LMS
+     */
+    private RemoteReference<LMS> getStationReference(String name) {
+        RemoteReference<LMS> ref = stationRefs.get(name);
+        if(ref == null){
+            RemoteReference<LMS> created = new RemoteReference<>(nameService, name, LMS.class, null);
+            ref = stationRefs.putIfAbsent(name, created);
+            if(ref == null){
+                ref = created;
+            }
+        }
+        return ref;
+    }
+
     /**
      * Returns the CORBA ORB instance of this class.
      *
@@ -0,0 +1,164 @@
+package com.zackehh.floodz.sensor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects throughput and latency figures for a {@link SensorFleet}.
+ * Latencies are recorded into a fixed set of logarithmic buckets, so
+ * recording is lock-free and memory use does not grow with the number
+ * of readings sent.
+ */
+class FleetStats {
+
+    /**
+     * The number of buckets per doubling of latency.
+     */
+    private static final int BUCKETS_PER_DOUBLING = 4;
+
+    /**
+     * The number of latency buckets (covering up to ~30 seconds).
+     */
+    private static final int BUCKET_COUNT = 100;
+
+    /**
+     * Counts of latencies recorded per bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of readings acknowledged by an LMS.
+     */
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * The number of readings which failed to send.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * The highest latency seen, in microseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * The time this set of stats started collecting.
+     */
+    private final long started = System.nanoTime();
+
+    /**
+     * Records a successfully acknowledged reading.
+     *
+     * @param nanos the time taken for the acknowledgement
+     */
+    public void recordSent(long nanos){
+        // convert to micros
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+        // find the bucket and increment
+        buckets.incrementAndGet(bucket(micros));
+
+        // track the maximum
+        long current;
+        while(micros > (current = max.get())){
+            if(max.compareAndSet(current, micros)){
+                break;
+            }
+        }
+
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Records a reading which could not be sent.
+     */
+    public void recordFailure(){
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Creates a readable summary of the collected stats.
+     *
+     * @return a String summary
+     */
+    public String summary(){
+        // elapsed time in seconds
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        // copy out the counts
+        long count = sent.get();
+
+        return String.format(
+                "%d sent, %d failed in %.1fs (%.1f/s), latency p50=%s p95=%s p99=%s max=%s",
+                count, failed.get(), elapsed, count / Math.max(elapsed, 0.001),
+                format(percentile(0.50)), format(percentile(0.95)),
+                format(percentile(0.99)), format(count == 0 ? 0 : max.get())
+        );
+    }
+
+    /**
+     * Estimates a latency percentile from the buckets. The upper bound
+     * of the bucket containing the percentile is returned.
+     *
+     * @param percentile the percentile (between 0 and 1)
+     * @return the estimated latency in microseconds
+     */
+    private long percentile(double percentile){
+        // total recorded values
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            total += buckets.get(i);
+        }
+
+        // nothing recorded
+        if(total == 0){
+            return 0;
+        }
+
+        // the rank we're looking for
+        long rank = (long) Math.ceil(total * percentile);
+
+        // walk the buckets until we pass it
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += buckets.get(i);
+            if(seen >= rank){
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Calculates the bucket for a latency.
+     *
+     * @param micros the latency in microseconds
+     * @return the bucket index
+     */
+    private static int bucket(long micros){
+        int index = (int) (BUCKETS_PER_DOUBLING * (Math.log(micros + 1) / Math.log(2)));
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Calculates the upper latency bound of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the bound in microseconds
+     */
+    private static long upperBound(int bucket){
+        return (long) Math.pow(2, (bucket + 1) / (double) BUCKETS_PER_DOUBLING) - 1;
+    }
+
+    /**
+     * Formats a microsecond latency as milliseconds.
+     *
+     * @param micros the latency in microseconds
+     * @return a readable String
+     */
+    private static String format(long micros){
+        return String.format("%.2fms", micros / 1000.0);
+    }
+}
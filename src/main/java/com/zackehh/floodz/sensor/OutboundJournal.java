@@ -0,0 +1,183 @@
+package com.zackehh.floodz.sensor;
+
+import com.zackehh.corba.common.Reading;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A durable queue of Readings which could not be sent to the LMS, backed
+ * by a memory-mapped file. Records are fixed-size and written into a ring,
+ * so the file never grows; if the journal fills up, the oldest unsent
+ * readings are overwritten.
+ *
+ * The head and tail positions are stored in a small header at the start
+ * of the file, so unsent readings survive a restart of the sensor. Data
+ * is written through the page cache rather than forced to disk on every
+ * append, which protects against a process crash but not a power cut.
+ */
+class OutboundJournal {
+
+    /**
+     * Marker at the start of the file, to detect foreign files.
+     */
+    private static final int MAGIC = 0x464C4A31;
+
+    /**
+     * The size of the file header, in bytes.
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * The size of a single record (time + measurement), in bytes.
+     */
+    private static final int RECORD_SIZE = 12;
+
+    /**
+     * The mapped journal file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The maximum number of records held.
+     */
+    private final int capacity;
+
+    /**
+     * The sequence number of the next record to write.
+     */
+    private long head;
+
+    /**
+     * The sequence number of the oldest unsent record.
+     */
+    private long tail;
+
+    /**
+     * Opens (or creates) a journal at the given path. An existing journal
+     * keeps its unsent readings, as long as the capacity matches.
+     *
+     * @param path the path of the journal file
+     * @param capacity the maximum number of readings held
+     * @throws IOException if the file cannot be mapped
+     */
+    public OutboundJournal(String path, int capacity) throws IOException {
+        if(capacity < 1){
+            throw new IllegalArgumentException("Journal capacity must be positive!");
+        }
+
+        this.capacity = capacity;
+
+        // map the whole file into memory
+        try(RandomAccessFile file = new RandomAccessFile(path, "rw")){
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+
+        // pick up where a previous run left off, or start afresh
+        if(buffer.getInt(0) == MAGIC && buffer.getInt(4) == capacity){
+            head = buffer.getLong(8);
+            tail = buffer.getLong(16);
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacity);
+            writeHeader();
+        }
+    }
+
+    /**
+     * Appends readings to the end of the journal, overwriting the oldest
+     * unsent readings if the journal is full.
+     *
+     * @param readings the readings to append, oldest first
+     * @return the number of older readings overwritten
+     */
+    public synchronized int append(Reading[] readings){
+        int dropped = 0;
+
+        for(Reading reading : readings){
+            // make room by dropping the oldest
+            if(head - tail == capacity){
+                tail++;
+                dropped++;
+            }
+
+            // write the record
+            int offset = offset(head);
+            buffer.putLong(offset, reading.time);
+            buffer.putInt(offset + 8, reading.measurement);
+
+            head++;
+        }
+
+        writeHeader();
+
+        return dropped;
+    }
+
+    /**
+     * Reads the oldest unsent readings without removing them.
+     *
+     * @param max the maximum number of readings to read
+     * @return a Reading[] of up to max readings, oldest first
+     */
+    public synchronized Reading[] peek(int max){
+        int count = (int) Math.min(max, head - tail);
+
+        Reading[] readings = new Reading[count];
+        for(int i = 0; i < count; i++){
+            int offset = offset(tail + i);
+            readings[i] = new Reading(buffer.getLong(offset), buffer.getInt(offset + 8));
+        }
+
+        return readings;
+    }
+
+    /**
+     * Removes the oldest readings, after they have been sent.
+     *
+     * @param count the number of readings to remove
+     */
+    public synchronized void remove(int count){
+        tail = Math.min(head, tail + count);
+        writeHeader();
+    }
+
+    /**
+     * Returns the number of unsent readings in the journal.
+     *
+     * @return the number of readings
+     */
+    public synchronized long size(){
+        return head - tail;
+    }
+
+    /**
+     * Determines whether there are any unsent readings.
+     *
+     * @return true if the journal is empty
+     */
+    public synchronized boolean isEmpty(){
+        return head == tail;
+    }
+
+    /**
+     * Stores the head and tail positions in the file header.
+     */
+    private void writeHeader(){
+        buffer.putLong(8, head);
+        buffer.putLong(16, tail);
+    }
+
+    /**
+     * Calculates the file offset of a record.
+     *
+     * @param sequence the sequence number of the record
+     * @return the offset in bytes
+     */
+    private int offset(long sequence){
+        return HEADER_SIZE + (int) (sequence % capacity) * RECORD_SIZE;
+    }
+}
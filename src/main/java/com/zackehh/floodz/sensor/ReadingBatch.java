@@ -0,0 +1,127 @@
+package com.zackehh.floodz.sensor;
+
+import com.zackehh.corba.common.Reading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A buffer of Readings waiting to be uploaded to an LMS. Readings
+ * are flushed as a single batch either when the buffer fills up,
+ * or when the oldest buffered reading has waited for the linger
+ * time - whichever happens first.
+ */
+class ReadingBatch {
+
+    /**
+     * The readings waiting to be uploaded, oldest first.
+     */
+    private final List<Reading> pending = new ArrayList<>();
+
+    /**
+     * The number of readings which triggers an upload.
+     */
+    private final int size;
+
+    /**
+     * The maximum time (in ms) a reading may wait in the buffer.
+     */
+    private final long linger;
+
+    /**
+     * The scheduler used to trigger linger flushes.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The handler to pass flushed batches to.
+     */
+    private final Uploader uploader;
+
+    /**
+     * The currently scheduled linger flush, if any.
+     */
+    private ScheduledFuture<?> lingerTask;
+
+    /**
+     * Creates a new batch with the given flush conditions.
+     *
+     * @param size the number of readings per batch
+     * @param linger the maximum wait time in ms
+     * @param scheduler the scheduler for linger flushes
+     * @param uploader the batch handler
+     */
+    public ReadingBatch(int size, long linger, ScheduledExecutorService scheduler, Uploader uploader){
+        this.size = size;
+        this.linger = linger;
+        this.scheduler = scheduler;
+        this.uploader = uploader;
+    }
+
+    /**
+     * Adds a Reading to the buffer, flushing if the buffer is full
+     * or scheduling a linger flush if this is the first reading.
+     *
+     * @param reading the reading to buffer
+     */
+    public synchronized void add(Reading reading){
+        // buffer the reading
+        pending.add(reading);
+
+        // flush immediately when full
+        if(pending.size() >= size){
+            flush();
+            return;
+        }
+
+        // otherwise make sure it doesn't wait too long
+        if(lingerTask == null){
+            lingerTask = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, linger, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Uploads all buffered readings as a single batch. The uploader is
+     * called whilst holding the lock to keep batches in order.
+     */
+    public synchronized void flush(){
+        // cancel any pending linger flush
+        if(lingerTask != null){
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+
+        // nothing to do
+        if(pending.isEmpty()){
+            return;
+        }
+
+        // copy out the batch and reset the buffer
+        Reading[] batch = pending.toArray(new Reading[pending.size()]);
+        pending.clear();
+
+        // pass to the uploader
+        uploader.upload(batch);
+    }
+
+    /**
+     * A simple interface to receive flushed batches.
+     */
+    interface Uploader {
+
+        /**
+         * Uploads a batch of readings, oldest first.
+         *
+         * @param readings the readings to upload
+         */
+        void upload(Reading[] readings);
+    }
+}
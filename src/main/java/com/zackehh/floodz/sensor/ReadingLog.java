@@ -0,0 +1,320 @@
+package com.zackehh.floodz.sensor;
+
+import com.zackehh.corba.common.Reading;
+import com.zackehh.corba.common.ReadingPage;
+import com.zackehh.floodz.common.util.ReadingCodec;
+
+/**
+ * A set of fixed-capacity logs of Readings, stored as parallel primitive
+ * arrays of times and measurements. Once a log is full, the oldest
+ * reading is overwritten by each new reading, so memory use is fixed
+ * regardless of how long the sensor runs.
+ *
+ * A single instance can hold the logs of many sensors (each addressed by
+ * an index), with all state kept in shared arrays rather than an object
+ * per sensor. A standalone sensor simply uses a single log, at index 0.
+ *
+ * Readings are expected to arrive in time order, which allows ranges
+ * to be located via binary search. Every reading is also given a
+ * sequence number (its position in the stream of all readings ever
+ * written to its log), which is used as the continuation cursor when
+ * paging.
+ */
+class ReadingLog {
+
+    /**
+     * The maximum number of locks used to guard the logs.
+     */
+    private static final int MAX_LOCKS = 64;
+
+    /**
+     * The times of the stored readings, log after log.
+     */
+    private final long[] times;
+
+    /**
+     * The measurements of the stored readings, log after log.
+     */
+    private final int[] measurements;
+
+    /**
+     * The slot (within its log) each log will write to next.
+     */
+    private final int[] heads;
+
+    /**
+     * The number of live readings in each log.
+     */
+    private final int[] sizes;
+
+    /**
+     * The total number of readings ever written to each log.
+     */
+    private final long[] written;
+
+    /**
+     * Locks guarding the logs, striped by log index.
+     */
+    private final Object[] locks;
+
+    /**
+     * The maximum number of readings in each log.
+     */
+    private final int capacity;
+
+    /**
+     * Creates a single log able to hold the given number of readings.
+     *
+     * @param capacity the maximum number of readings
+     */
+    public ReadingLog(int capacity){
+        this(1, capacity);
+    }
+
+    /**
+     * Creates a set of logs, each able to hold the given number of readings.
+     *
+     * @param logs the number of logs
+     * @param capacity the maximum number of readings per log
+     */
+    public ReadingLog(int logs, int capacity){
+        if(logs < 1 || capacity < 1){
+            throw new IllegalArgumentException("Reading log capacity must be positive!");
+        }
+
+        // every log shares the same arrays, so their total must fit in one
+        long total = (long) logs * capacity;
+        if(total > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Reading logs of " + logs + " x " + capacity + " readings are too large!");
+        }
+
+        this.capacity = capacity;
+        this.times = new long[(int) total];
+        this.measurements = new int[(int) total];
+        this.heads = new int[logs];
+        this.sizes = new int[logs];
+        this.written = new long[logs];
+        this.locks = new Object[Math.min(logs, MAX_LOCKS)];
+        for(int i = 0; i < locks.length; i++){
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Appends a reading to a log, evicting the oldest reading if the
+     * log is already at capacity.
+     *
+     * @param log the index of the log
+     * @param time the time of the reading
+     * @param measurement the measurement of the reading
+     */
+    public void add(int log, long time, int measurement){
+        synchronized(lock(log)){
+            // write into the head slot
+            int slot = log * capacity + heads[log];
+            times[slot] = time;
+            measurements[slot] = measurement;
+
+            // move the head along, wrapping around
+            heads[log] = (heads[log] + 1) % capacity;
+
+            // grow until we hit capacity
+            if(sizes[log] < capacity){
+                sizes[log]++;
+            }
+
+            // bump the sequence
+            written[log]++;
+        }
+    }
+
+    /**
+     * Removes all readings from a log. Sequence numbers are not reset,
+     * so any outstanding cursors simply find no more readings.
+     *
+     * @param log the index of the log
+     */
+    public void clear(int log){
+        synchronized(lock(log)){
+            heads[log] = 0;
+            sizes[log] = 0;
+        }
+    }
+
+    /**
+     * Returns the number of readings currently held in a log.
+     *
+     * @param log the index of the log
+     * @return the number of live readings
+     */
+    public int size(int log){
+        synchronized(lock(log)){
+            return sizes[log];
+        }
+    }
+
+    /**
+     * Returns the most recent reading in a log.
+     *
+     * @param log the index of the log
+     * @return the latest Reading, or null if the log is empty
+     */
+    public Reading latest(int log){
+        synchronized(lock(log)){
+            if(sizes[log] == 0){
+                return null;
+            }
+            int slot = slot(log, sizes[log] - 1);
+            return new Reading(times[slot], measurements[slot]);
+        }
+    }
+
+    /**
+     * Creates a Reading array of the live readings in a log, oldest first.
+     * Only the live window is copied, not the full capacity.
+     *
+     * @param log the index of the log
+     * @return a Reading[] of the known readings
+     */
+    public Reading[] snapshot(int log){
+        synchronized(lock(log)){
+            // create an array for the live window
+            Reading[] readings = new Reading[sizes[log]];
+
+            // copy each reading out
+            for(int i = 0; i < readings.length; i++){
+                int slot = slot(log, i);
+                readings[i] = new Reading(times[slot], measurements[slot]);
+            }
+
+            return readings;
+        }
+    }
+
+    /**
+     * Encodes the live readings of a log, oldest first, using
+     * {@link ReadingCodec}. Readings are encoded straight from the arrays.
+     *
+     * @param log the index of the log
+     * @return a byte[] of the encoded readings
+     */
+    public byte[] encode(int log){
+        synchronized(lock(log)){
+            ReadingCodec.Encoder encoder = new ReadingCodec.Encoder();
+            for(int i = 0; i < sizes[log]; i++){
+                int slot = slot(log, i);
+                encoder.add(times[slot], measurements[slot]);
+            }
+            return encoder.toByteArray();
+        }
+    }
+
+    /**
+     * Retrieves up to `limit` readings from a log with a time inside
+     * [from, to), oldest first. If more readings match, the returned
+     * cursor can be passed to {@link #page(int, long, long, int)} to
+     * continue, otherwise the cursor is -1.
+     *
+     * @param log the index of the log
+     * @param from the earliest time to include
+     * @param to the time to stop before
+     * @param limit the maximum readings to return, or <= 0 for no limit
+     * @return a ReadingPage instance
+     */
+    public ReadingPage range(int log, long from, long to, int limit){
+        synchronized(lock(log)){
+            return page(log, written[log] - sizes[log] + search(log, from), to, limit);
+        }
+    }
+
+    /**
+     * Continues a ranged retrieval from a cursor previously returned by
+     * {@link #range(int, long, long, int)} or this method. Readings evicted
+     * since the cursor was issued are skipped. A negative cursor, such as
+     * the -1 returned with the last page, yields an empty page.
+     *
+     * @param log the index of the log
+     * @param cursor the sequence number to resume from
+     * @param to the time to stop before
+     * @param limit the maximum readings to return, or <= 0 for no limit
+     * @return a ReadingPage instance
+     */
+    public ReadingPage page(int log, long cursor, long to, int limit){
+        // the retrieval has already finished
+        if(cursor < 0){
+            return new ReadingPage(new Reading[0], -1);
+        }
+
+        synchronized(lock(log)){
+            // sequence number of the oldest live reading
+            long oldest = written[log] - sizes[log];
+
+            // translate the cursor to a position in the live window
+            int start = cursor < oldest ? 0 : (int) Math.min(cursor - oldest, sizes[log]);
+
+            // position of the first reading at or after the end time
+            int end = Math.max(start, search(log, to));
+
+            // apply the limit if there is one
+            int count = end - start;
+            if(limit > 0 && count > limit){
+                count = limit;
+            }
+
+            // copy the readings out
+            Reading[] readings = new Reading[count];
+            for(int i = 0; i < count; i++){
+                int slot = slot(log, start + i);
+                readings[i] = new Reading(times[slot], measurements[slot]);
+            }
+
+            // point the cursor at the next reading, if there is one
+            long next = start + count < end ? oldest + start + count : -1;
+
+            return new ReadingPage(readings, next);
+        }
+    }
+
+    /**
+     * Binary searches the live window of a log for the first reading with
+     * a time at or after the given time. Must be called holding the lock.
+     *
+     * @param log the index of the log
+     * @param time the time to search for
+     * @return a position in the live window (size if none match)
+     */
+    private int search(int log, long time){
+        int low = 0, high = sizes[log];
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(times[slot(log, mid)] < time){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Translates a position in the live window of a log to an array slot.
+     * Must be called holding the lock.
+     *
+     * @param log the index of the log
+     * @param position the position, where 0 is the oldest reading
+     * @return the array slot of the reading
+     */
+    private int slot(int log, int position){
+        return log * capacity + (heads[log] - sizes[log] + position + capacity) % capacity;
+    }
+
+    /**
+     * Retrieves the lock guarding a log.
+     *
+     * @param log the index of the log
+     * @return the lock Object
+     */
+    private Object lock(int log){
+        return locks[log % locks.length];
+    }
+}
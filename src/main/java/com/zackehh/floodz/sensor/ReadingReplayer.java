@@ -0,0 +1,266 @@
+package com.zackehh.floodz.sensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays recorded readings from a file through a {@link SensorDriver},
+ * as though they were being measured live. The file is streamed through
+ * a fixed-size buffer, so files of any size can be replayed.
+ *
+ * Two file formats are supported:
+ *
+ * - CSV, with a `time,measurement` pair per line (time in ms); any line
+ *   which does not parse, such as a header, is skipped
+ * - binary, with a 12 byte record per reading (a big-endian long time
+ *   followed by an int measurement)
+ *
+ * Readings can be paced using their original timing, their original
+ * timing sped up by a factor, or sent as fast as possible.
+ */
+class ReadingReplayer {
+
+    /**
+     * The size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The size of a binary record.
+     */
+    private static final int RECORD_SIZE = 12;
+
+    /**
+     * How often to print progress, in ms.
+     */
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    /**
+     * The driver to replay readings through.
+     */
+    private final SensorDriver driver;
+
+    /**
+     * The file to replay.
+     */
+    private final Path path;
+
+    /**
+     * Whether the file is CSV (otherwise binary).
+     */
+    private final boolean csv;
+
+    /**
+     * The speed-up factor, or 0 to replay as fast as possible.
+     */
+    private final double speed;
+
+    /**
+     * The buffer used to stream the file.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * The channel of the file being replayed.
+     */
+    private FileChannel channel;
+
+    /**
+     * The time of the most recently parsed reading.
+     */
+    private long time;
+
+    /**
+     * The measurement of the most recently parsed reading.
+     */
+    private int measurement;
+
+    /**
+     * Creates a new replayer for the given file.
+     *
+     * @param driver the driver to replay through
+     * @param sArgs the parsed sensor args
+     */
+    public ReadingReplayer(SensorDriver driver, SensorArgs sArgs){
+        this.driver = driver;
+        this.path = Paths.get(sArgs.replay);
+
+        // pick the format, defaulting from the file extension
+        String format = sArgs.replayFormat;
+        if(format == null){
+            format = sArgs.replay.toLowerCase().endsWith(".csv") ? "csv" : "binary";
+        }
+        this.csv = format.equals("csv");
+
+        // pick the pacing
+        switch(sArgs.pace){
+            case "original":
+                this.speed = 1;
+                break;
+            case "accelerated":
+                this.speed = sArgs.speed;
+                break;
+            case "fast":
+                this.speed = 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unrecognised pace `" + sArgs.pace + "`!");
+        }
+    }
+
+    /**
+     * Replays every reading in the file, blocking until done.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public void run() throws IOException {
+        System.out.println("Replaying readings from " + path + "...");
+
+        try(FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)){
+            channel = fileChannel;
+
+            // start with an empty buffer
+            buffer.clear();
+            buffer.flip();
+
+            // the recorded and real start times
+            long firstTime = 0;
+            long started = System.nanoTime();
+
+            long count = 0;
+            long lastProgress = System.currentTimeMillis();
+
+            while(csv ? nextCsv() : nextBinary()){
+                // wait for the reading to be due
+                if(count == 0){
+                    firstTime = time;
+                } else if(speed > 0){
+                    long due = started + (long) ((time - firstTime) * 1000000 / speed);
+                    long wait = due - System.nanoTime();
+                    if(wait > 0){
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+
+                // send it through the sensor
+                if(!driver.recordReading(measurement)){
+                    System.err.println("System is switched off, stopping replay!");
+                    break;
+                }
+
+                count++;
+
+                // show progress
+                long now = System.currentTimeMillis();
+                if(now - lastProgress >= PROGRESS_INTERVAL){
+                    System.out.println("Replayed " + count + " readings...");
+                    lastProgress = now;
+                }
+            }
+
+            double elapsed = (System.nanoTime() - started) / 1e9;
+            System.out.println(String.format("Replayed %d readings in %.1fs (%.1f/s).", count, elapsed, count / Math.max(elapsed, 0.001)));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses the next binary record.
+     *
+     * @return false if there are no more records
+     */
+    private boolean nextBinary() throws IOException {
+        if(!fill(RECORD_SIZE)){
+            if(buffer.hasRemaining()){
+                System.err.println("Ignoring " + buffer.remaining() + " trailing byte(s) in replay file!");
+            }
+            return false;
+        }
+        time = buffer.getLong();
+        measurement = buffer.getInt();
+        return true;
+    }
+
+    /**
+     * Parses the next valid CSV line, skipping any which do not parse.
+     * Values are parsed straight from the buffer, without creating Strings.
+     *
+     * @return false if there are no more lines
+     */
+    private boolean nextCsv() throws IOException {
+        while(true){
+            // per-line parse state
+            long first = 0, value = 0;
+            boolean second = false, negative = false, digits = false, valid = true;
+
+            int b;
+            while((b = nextByte()) != '\n' && b != -1){
+                if(b >= '0' && b <= '9'){
+                    value = value * 10 + (b - '0');
+                    digits = true;
+                } else if(b == '-' && !digits){
+                    negative = true;
+                } else if(b == ',' && !second && digits){
+                    first = negative ? -value : value;
+                    second = true;
+                    value = 0;
+                    negative = false;
+                    digits = false;
+                } else if(b != ' ' && b != '\r' && b != '\t'){
+                    valid = false;
+                }
+            }
+
+            // a complete pair was found
+            if(valid && second && digits){
+                time = first;
+                measurement = (int) (negative ? -value : value);
+                return true;
+            }
+
+            // otherwise skip the line, unless we're done
+            if(b == -1){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the next byte of the file.
+     *
+     * @return the byte, or -1 at the end of the file
+     */
+    private int nextByte() throws IOException {
+        return fill(1) ? buffer.get() & 0xFF : -1;
+    }
+
+    /**
+     * Makes sure the buffer has at least the given number of bytes
+     * remaining, reading more of the file if needed.
+     *
+     * @param needed the number of bytes needed
+     * @return false if the end of the file was reached first
+     */
+    private boolean fill(int needed) throws IOException {
+        if(buffer.remaining() >= needed){
+            return true;
+        }
+
+        // keep the unread bytes and read more after them
+        buffer.compact();
+        while(buffer.position() < needed){
+            if(channel.read(buffer) == -1){
+                break;
+            }
+        }
+        buffer.flip();
+
+        return buffer.remaining() >= needed;
+    }
+}
@@ -0,0 +1,110 @@
+package com.zackehh.floodz.sensor;
+
+/**
+ * Decides which readings a Sensor should forward to its LMS. A reading
+ * is only forwarded if it has moved by more than the deadband since the
+ * last forwarded reading, or if it crosses the alert level (in either
+ * direction). A heartbeat is due once nothing has been forwarded for the
+ * maximum silence interval.
+ *
+ * A negative deadband forwards every reading, and a heartbeat interval
+ * of zero disables heartbeats.
+ */
+class ReportingPolicy {
+
+    /**
+     * The amount a reading must move by to be forwarded.
+     */
+    private final int deadband;
+
+    /**
+     * The maximum time (in ms) to go without forwarding.
+     */
+    private final long heartbeat;
+
+    /**
+     * Whether anything has been forwarded yet.
+     */
+    private boolean forwarded;
+
+    /**
+     * The last forwarded measurement.
+     */
+    private int lastMeasurement;
+
+    /**
+     * The time the last reading was forwarded.
+     */
+    private long lastTime;
+
+    /**
+     * Creates a new policy with the given deadband and heartbeat.
+     *
+     * @param deadband the deadband, or < 0 to forward everything
+     * @param heartbeat the heartbeat interval in ms, or 0 to disable
+     */
+    public ReportingPolicy(int deadband, long heartbeat){
+        this.deadband = deadband;
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Returns the heartbeat interval of this policy.
+     *
+     * @return the interval in ms, or 0 if disabled
+     */
+    public long getHeartbeat(){
+        return heartbeat;
+    }
+
+    /**
+     * Determines whether a new measurement should be forwarded.
+     *
+     * @param measurement the new measurement
+     * @param alertLevel the alert level of the sensor
+     * @param time the time of the measurement
+     * @return true if the measurement should be forwarded
+     */
+    public synchronized boolean shouldForward(int measurement, int alertLevel, long time){
+        // always forward the first reading, or everything if disabled
+        if(!forwarded || deadband < 0){
+            return true;
+        }
+
+        // always forward a reading crossing the alert level
+        if((lastMeasurement > alertLevel) != (measurement > alertLevel)){
+            return true;
+        }
+
+        // forward if overdue a heartbeat anyway
+        if(isHeartbeatDue(time)){
+            return true;
+        }
+
+        // otherwise only forward if outside the deadband
+        return Math.abs(measurement - lastMeasurement) > deadband;
+    }
+
+    /**
+     * Records that a measurement has been forwarded.
+     *
+     * @param measurement the forwarded measurement
+     * @param time the time it was forwarded
+     */
+    public synchronized void recordForwarded(int measurement, long time){
+        forwarded = true;
+        lastMeasurement = measurement;
+        lastTime = time;
+    }
+
+    /**
+     * Determines whether a heartbeat is due, based on the time of the
+     * last forwarded reading.
+     *
+     * @param time the current time
+     * @return true if a heartbeat should be sent
+     */
+    public synchronized boolean isHeartbeatDue(long time){
+        return heartbeat > 0 && forwarded && time - lastTime >= heartbeat;
+    }
+}
@@ -10,9 +10,10 @@ import com.beust.jcommander.Parameter;
 class SensorArgs {
 
     /**
-     * The name of the Local Monitoring Station to connect to.
+     * The name of the Local Monitoring Station to connect to, or a
+     * comma-separated list of stations to choose between.
      */
-    @Parameter(names = "-lms", description = "Name of the LMS to connect to")
+    @Parameter(names = "-lms", description = "Name of the LMS to connect to (comma-separated to choose by load)")
     public String lms;
 
     /**
@@ -21,4 +22,100 @@ class SensorArgs {
     @Parameter(names = "-zone", description = "Zone of the current sensor")
     public String zone;
 
+    /**
+     * How often (in ms) to check for a less loaded station.
+     */
+    @Parameter(names = "-rebalance", description = "Interval (ms) between checks for a less loaded LMS (0 disables)")
+    public long rebalance = 30000;
+
+    /**
+     * How much more loaded a station must be before moving off it.
+     */
+    @Parameter(names = "-load-margin", description = "Fraction by which the current LMS must be more loaded to move off it")
+    public double loadMargin = 0.5;
+
+    /**
+     * The number of readings to buffer before uploading to the LMS.
+     */
+    @Parameter(names = "-batch", description = "Number of readings to upload per LMS request")
+    public int batch = 1;
+
+    /**
+     * The maximum time (in ms) a buffered reading waits before upload.
+     */
+    @Parameter(names = "-linger", description = "Maximum time (ms) a reading waits for a batch to fill")
+    public long linger = 1000;
+
+    /**
+     * The maximum number of readings kept in the reading log.
+     */
+    @Parameter(names = "-history", description = "Number of readings to keep in the reading log")
+    public int history = 10000;
+
+    /**
+     * The amount a reading must move by before it is forwarded.
+     */
+    @Parameter(names = "-deadband", description = "Minimum change before a reading is forwarded (-1 forwards all)")
+    public int deadband = -1;
+
+    /**
+     * The maximum time (in ms) to go without forwarding a reading.
+     */
+    @Parameter(names = "-heartbeat", description = "Maximum time (ms) between forwarded readings (0 disables)")
+    public long heartbeat = 0;
+
+    /**
+     * Whether to upload readings without waiting for confirmation.
+     */
+    @Parameter(names = "-oneway", description = "Upload readings without waiting for the LMS to confirm")
+    public boolean oneway = false;
+
+    /**
+     * The path of the journal used to hold unsent readings.
+     */
+    @Parameter(names = "-journal", description = "Path of a journal file to hold readings while the LMS is unreachable")
+    public String journal;
+
+    /**
+     * The maximum number of readings held in the journal.
+     */
+    @Parameter(names = "-journal-size", description = "Maximum number of readings held in the journal")
+    public int journalSize = 100000;
+
+    /**
+     * The maximum number of journaled readings sent per replay.
+     */
+    @Parameter(names = "-replay-batch", description = "Maximum number of journaled readings sent per replay")
+    public int replayBatch = 100;
+
+    /**
+     * The maximum number of replays per second.
+     */
+    @Parameter(names = "-replay-rate", description = "Maximum number of journal replays per second")
+    public int replayRate = 5;
+
+    /**
+     * The path of a file of readings to replay, instead of taking input.
+     */
+    @Parameter(names = "-replay", description = "Path of a file of recorded readings to replay")
+    public String replay;
+
+    /**
+     * The format of the replay file.
+     */
+    @Parameter(names = "-replay-format", description = "Format of the replay file: csv or binary (default from extension)")
+    public String replayFormat;
+
+    /**
+     * How replayed readings are paced.
+     */
+    @Parameter(names = "-pace", description = "Replay pacing: original, accelerated or fast")
+    public String pace = "original";
+
+    /**
+     * The speed-up factor for accelerated pacing.
+     */
+    @Parameter(names = "-speed", description = "Speed-up factor for accelerated replay")
+    public double speed = 10;
+
 }
@@ -39,6 +39,12 @@ public class SensorClient {
         // create a new driver
         sensorDriver = new SensorDriver(args, sensorArgs);
 
+        // replay a file if one was given
+        if(sensorArgs.replay != null){
+            new ReadingReplayer(sensorDriver, sensorArgs).run();
+            return;
+        }
+
         // take in user input
         processInput();
     }
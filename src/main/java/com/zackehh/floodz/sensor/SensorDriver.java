@@ -3,18 +3,29 @@ package com.zackehh.floodz.sensor;
 import com.zackehh.corba.common.Alert;
 import com.zackehh.corba.common.MetaData;
 import com.zackehh.corba.common.Reading;
+import com.zackehh.corba.common.ReadingPage;
 import com.zackehh.corba.common.SensorMeta;
+import com.zackehh.corba.common.Session;
 import com.zackehh.corba.lms.LMS;
+import com.zackehh.corba.sensor.Sensor;
 import com.zackehh.corba.sensor.SensorHelper;
 import com.zackehh.corba.sensor.SensorPOA;
 import com.zackehh.floodz.common.util.NameServiceHandler;
 import com.zackehh.floodz.common.util.NamePair;
+import com.zackehh.floodz.common.util.RemoteReference;
 import com.zackehh.floodz.util.InputReader;
 import org.omg.CORBA.ORB;
 import org.omg.CosNaming.NamingContextExt;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The main driver for a Sensor, extending the POA generated
@@ -26,9 +37,9 @@ import java.util.List;
 class SensorDriver extends SensorPOA {
 
     /**
-     * A list of readings to keep track of previous readings.
+     * A bounded log to keep track of previous readings.
      */
-    private final List<Reading> readingLog = new ArrayList<>();
+    private final ReadingLog readingLog;
 
     /**
      * The metadata of this sensor.
@@ -40,11 +51,31 @@ class SensorDriver extends SensorPOA {
      */
     private final NamingContextExt namingContextExt;
 
+    /**
+     * Whether the sensor is currently moving to another station.
+     */
+    private final AtomicBoolean migrating = new AtomicBoolean();
+
     /**
      * The CORBA ORB instance.
      */
     private final ORB orb;
 
+    /**
+     * The policy deciding which readings are forwarded to the LMS.
+     */
+    private final ReportingPolicy policy;
+
+    /**
+     * Whether uploads use the oneway operations of the LMS.
+     */
+    private final boolean oneway;
+
+    /**
+     * The scheduler used for background uploads and heartbeats.
+     */
+    private final ScheduledExecutorService scheduler = createScheduler();
+
     /**
      * Whether the sensor is powered on or not.
      */
@@ -53,12 +84,60 @@ class SensorDriver extends SensorPOA {
     /**
      * The connected Local Monitoring Station.
      */
-    private LMS lms;
+    private volatile RemoteReference<LMS> lms;
+
+    /**
+     * Chooses between the candidate stations by load.
+     */
+    private final StationSelector selector;
 
     /**
      * The last known reading from this sensor.
      */
-    private Reading current;
+    private volatile Reading current;
+
+    /**
+     * The newest reading held back by the reporting policy, if any.
+     */
+    private final AtomicReference<Reading> unsent = new AtomicReference<>();
+
+    /**
+     * The buffer of readings waiting to be uploaded, or null if
+     * every reading should be uploaded as soon as it arrives.
+     */
+    private ReadingBatch batch;
+
+    /**
+     * The currently scheduled heartbeat, if any.
+     */
+    private ScheduledFuture<?> heartbeatTask;
+
+    /**
+     * The currently scheduled sampling requested by the LMS, if any.
+     */
+    private ScheduledFuture<?> samplingTask;
+
+    /**
+     * The CORBA reference to this sensor, handed to the LMS.
+     */
+    private Sensor self;
+
+    /**
+     * The token of the current LMS session, used to keep the same id
+     * when registering again.
+     */
+    private volatile String token;
+
+    /**
+     * The journal of readings waiting to be sent, or null if readings
+     * which fail to send should be dropped.
+     */
+    private OutboundJournal journal;
+
+    /**
+     * The maximum number of journaled readings sent per replay.
+     */
+    private int replayBatch;
 
     /**
      * Connects to the assigned LMS after prompting the user for input
@@ -71,6 +150,15 @@ class SensorDriver extends SensorPOA {
         // Turn on power
         power_on = true;
 
+        // Create the bounded reading log
+        readingLog = new ReadingLog(sArgs.history);
+
+        // Create the reporting policy
+        policy = new ReportingPolicy(sArgs.deadband, sArgs.heartbeat);
+
+        // Set the upload mode
+        oneway = sArgs.oneway;
+
         // Initialise the ORB
         orb = ORB.init(args, null);
 
@@ -98,35 +186,41 @@ class SensorDriver extends SensorPOA {
             zoneName = console.readString("Please enter the sensor zone: ");
         }
 
-        // get the LMS name
-        String lmsName = sArgs.lms;
+        // get the LMS name(s)
+        String lmsNames = sArgs.lms;
 
         // if none found, ask for input
-        if(lmsName == null){
-            lmsName = console.readString("Please enter the local station name: ");
+        if(lmsNames == null){
+            lmsNames = console.readString("Please enter the local station name: ");
         }
 
+        // pick the least loaded station, if given a choice
+        selector = new StationSelector(namingContextExt, lmsNames, sArgs.loadMargin);
+        String lmsName = selector.hasAlternatives() ? selector.leastLoaded(null) : selector.first();
+
         // find an LMS with the given name
-        lms = NameServiceHandler.retrieveObject(namingContextExt, lmsName, LMS.class);
+        lms = connect(lmsName);
+        LMS station = lmsName == null ? null : lms.get();
 
         // exit if none found
-        if(lms == null){
-            throw new IllegalStateException("Unable to find an LMS with name `" + lmsName + "`");
+        if(station == null){
+            throw new IllegalStateException("Unable to find an LMS with name `" + lmsNames + "`");
         }
 
         System.out.println("");
         System.out.println("Sensor in zone " + zoneName + " connecting to " + lmsName + "...");
 
         // register the sensor with the LMS
-        final SensorMeta meta = lms.registerSensor(zoneName);
+        Session session = station.openSession(zoneName);
+        final SensorMeta meta = session.meta;
+        token = session.token;
 
         try {
+            // create a reference to hand out
+            self = SensorHelper.narrow(NameServiceHandler.createRef(namingPair, this, SensorHelper.class));
+
             // bind to the NamingService
-            NameServiceHandler.bind(
-                    namingPair.getNamingService(),
-                    NameServiceHandler.createRef(namingPair, this, SensorHelper.class),
-                    meta.sensor
-            );
+            NameServiceHandler.bind(namingPair.getNamingService(), self, meta.sensor);
         } catch(Exception e) {
             throw new IllegalStateException("Unable to bind Sensor to NameService!");
         }
@@ -136,12 +230,62 @@ class SensorDriver extends SensorPOA {
 
         System.out.println("Connected and assigned id " + meta.sensor + " by LMS.");
 
+        // let the LMS adjust how often we report
+        attach(station);
+
+        // keep checking for a less loaded station
+        if(selector.hasAlternatives() && sArgs.rebalance > 0){
+            // start at a random offset so sensors don't all move at once
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    rebalance();
+                }
+            }, sArgs.rebalance / 2 + ThreadLocalRandom.current().nextLong(sArgs.rebalance / 2 + 1), sArgs.rebalance, TimeUnit.MILLISECONDS);
+        }
+
+        // only buffer readings when asked to batch
+        if(sArgs.batch > 1){
+            batch = new ReadingBatch(sArgs.batch, sArgs.linger, scheduler, new ReadingBatch.Uploader() {
+                @Override
+                public void upload(Reading[] readings) {
+                    uploadReadings(readings);
+                }
+            });
+        }
+
+        // open the outbound journal, if one is configured
+        if(sArgs.journal != null){
+            try {
+                journal = new OutboundJournal(sArgs.journal, sArgs.journalSize);
+            } catch(IOException e) {
+                throw new IllegalStateException("Unable to open journal `" + sArgs.journal + "`!");
+            }
+
+            // replay at a fixed rate, to avoid flooding the LMS on reconnect
+            replayBatch = sArgs.replayBatch;
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    replayJournal();
+                }
+            }, 0, Math.max(1, 1000 / Math.max(1, sArgs.replayRate)), TimeUnit.MILLISECONDS);
+
+            if(!journal.isEmpty()){
+                System.out.println("Replaying " + journal.size() + " unsent reading(s) from journal.");
+            }
+        }
+
         // add a shutdown hook to disconnect from the LMS
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 try {
-                    if (!lms.removeSensor(meta)) {
+                    // push out anything still buffered
+                    if (batch != null) {
+                        batch.flush();
+                    }
+                    if (!lms.get().removeSensor(metadata.sensorMeta)) {
                         System.err.println("Unable to unregister from LMS!");
                     }
                 } catch (Exception e) {
@@ -192,7 +336,19 @@ class SensorDriver extends SensorPOA {
     @Override
     public boolean powerOff() {
         if(power_on){
-            lms.removeSensor(metadata.sensorMeta);
+            if(batch != null){
+                batch.flush();
+            }
+            try {
+                lms.invoke(new RemoteReference.RemoteCall<LMS, Boolean>() {
+                    @Override
+                    public Boolean call(LMS station) {
+                        return station.removeSensor(metadata.sensorMeta);
+                    }
+                });
+            } catch(Exception e) {
+                System.err.println("Unable to unregister from LMS!\n");
+            }
             power_on = false;
             return true;
         }
@@ -209,7 +365,16 @@ class SensorDriver extends SensorPOA {
     public boolean powerOn() {
         if(!power_on){
             try {
-                metadata.sensorMeta = lms.registerSensor(metadata.sensorMeta.zone);
+                lms.invoke(new RemoteReference.RemoteCall<LMS, Void>() {
+                    @Override
+                    public Void call(LMS station) {
+                        SensorMeta previous = metadata.sensorMeta;
+                        metadata.sensorMeta = resume(station, previous.zone);
+                        rebind(previous, metadata.sensorMeta);
+                        attach(station);
+                        return null;
+                    }
+                });
             } catch(Exception e) {
                 System.err.println("Unable to reconnect to LMS!\n");
                 return false;
@@ -227,17 +392,59 @@ class SensorDriver extends SensorPOA {
     @Override
     public void reset() {
         current = null;
-        readingLog.clear();
+        unsent.set(null);
+        readingLog.clear(0);
     }
 
     /**
-     * Retrieves the Reading log of the sensor as Reading array.
+     * Retrieves the Reading log of the sensor in the compact encoding
+     * of {@link com.zackehh.floodz.common.util.ReadingCodec}, which is
+     * far smaller on the wire than {@link #getReadingLog()}.
+     *
+     * @return a byte[] of the encoded readings
+     */
+    @Override
+    public byte[] getEncodedReadingLog() {
+        return readingLog.encode(0);
+    }
+
+    /**
+     * Retrieves the Reading log of the sensor as Reading array. Only
+     * the most recent readings are kept, up to the log capacity.
      *
      * @return a Reading[] of the known readings
      */
     @Override
     public Reading[] getReadingLog() {
-        return readingLog.toArray(new Reading[readingLog.size()]);
+        return readingLog.snapshot(0);
+    }
+
+    /**
+     * Continues retrieval of a time range of the Reading log, from a
+     * cursor returned by a previous call.
+     *
+     * @param cursor the cursor to resume from
+     * @param to the time to stop before
+     * @param limit the maximum number of readings to return
+     * @return a ReadingPage of readings and the next cursor (or -1)
+     */
+    @Override
+    public ReadingPage getReadingPage(long cursor, long to, int limit) {
+        return readingLog.page(0, cursor, to, limit);
+    }
+
+    /**
+     * Retrieves the readings made within [from, to), up to the given
+     * limit. The returned cursor can be used to fetch further pages.
+     *
+     * @param from the earliest time to include
+     * @param to the time to stop before
+     * @param limit the maximum number of readings to return
+     * @return a ReadingPage of readings and the next cursor (or -1)
+     */
+    @Override
+    public ReadingPage getReadingRange(long from, long to, int limit) {
+        return readingLog.range(0, from, to, limit);
     }
 
     /**
@@ -245,40 +452,447 @@ class SensorDriver extends SensorPOA {
      * connected LMS. Also adds the reading to the reading log so
      * it can be accessed later.
      *
+     * Readings are only forwarded when the reporting policy allows it,
+     * but are always added to the reading log.
+     *
      * @param measurement the measurement of the reading
      */
     @Override
     public void sendAlert(int measurement){
-        if(!power_on){
+        if(!recordReading(measurement)){
             System.err.println("System is switched off!\n");
             return;
         }
 
-        Reading reading = new Reading(System.currentTimeMillis(), measurement);
+        if(measurement > metadata.sensorMeta.alert_level){
+            System.err.println("Reading is above alert level of " + metadata.sensorMeta.alert_level + " at " + measurement + "!");
+        } else {
+            System.out.println("Registered new reading: " + measurement);
+        }
+    }
 
+    /**
+     * Sets how often the sensor reports, as requested by the LMS. While an
+     * interval is set, the newest reading held back by the reporting policy
+     * is forwarded at that rate, so the LMS sees small changes it would
+     * otherwise miss; an interval of zero leaves the reporting policy alone
+     * to decide. Nothing is sent unless a new measurement has been taken.
+     *
+     * @param interval the reporting interval in ms, or 0 to stop sampling
+     */
+    @Override
+    public synchronized void setReportingInterval(long interval) {
+        if(samplingTask != null){
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+
+        if(interval > 0){
+            samplingTask = scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sampleReading();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+            System.out.println("LMS set reporting interval to " + interval + "ms.");
+        } else {
+            System.out.println("LMS stopped periodic reporting.");
+        }
+    }
+
+    /**
+     * Forwards the newest reading held back by the reporting policy, if
+     * there is one, as the LMS has asked for it.
+     */
+    private void sampleReading(){
+        Reading reading = unsent.getAndSet(null);
+
+        if(!power_on || reading == null){
+            return;
+        }
+
+        forwardReading(reading);
+    }
+
+    /**
+     * Hands a reference to this sensor to the LMS, so that the LMS can
+     * adjust the reporting interval. Stations which cannot take the
+     * reference are simply left unattached.
+     *
+     * @param station the LMS to attach to
+     */
+    private void attach(LMS station){
         try {
-            lms.ping();
+            station.attachSensor(metadata.sensorMeta, self);
         } catch(Exception e) {
-            lms = NameServiceHandler.retrieveObject(namingContextExt, metadata.lms, LMS.class);
-            if(lms != null){
-                metadata.sensorMeta = lms.registerSensor(metadata.sensorMeta.zone);
-            }
+            System.err.println("Unable to attach to LMS, reporting interval is fixed!");
+        }
+    }
+
+    /**
+     * Records a new measurement, taken at the current time, without any
+     * console output. The reading is added to the reading log and is
+     * forwarded if the reporting policy allows it.
+     *
+     * @param measurement the measurement of the reading
+     * @return false if the sensor is switched off
+     */
+    boolean recordReading(int measurement){
+        if(!power_on){
+            return false;
         }
 
-        if(lms != null) {
-            MetaData config = new MetaData(lms.name(), metadata.sensorMeta);
-            lms.receiveAlert(new Alert(config, reading));
+        Reading reading = new Reading(System.currentTimeMillis(), measurement);
+
+        if(policy.shouldForward(measurement, metadata.sensorMeta.alert_level, reading.time)){
+            unsent.set(null);
+            forwardReading(reading);
         } else {
-            System.err.println("LMS `" + metadata.lms + "` is unreachable!");
+            // hold it back in case the LMS asks for more
+            unsent.set(reading);
         }
 
         current = reading;
-        readingLog.add(reading);
+        readingLog.add(0, reading.time, reading.measurement);
 
-        if(measurement > metadata.sensorMeta.alert_level){
-            System.err.println("Reading is above alert level of " + metadata.sensorMeta.alert_level + " at " + measurement + "!");
+        return true;
+    }
+
+    /**
+     * Forwards a reading towards the LMS. If batching is enabled, the
+     * reading is buffered and uploaded along with others once the batch
+     * fills or the linger expires.
+     *
+     * @param reading the reading to forward
+     */
+    private void forwardReading(Reading reading){
+        policy.recordForwarded(reading.measurement, reading.time);
+
+        if(batch != null){
+            batch.add(reading);
         } else {
-            System.out.println("Registered new reading: " + measurement);
+            uploadReadings(new Reading[]{ reading });
         }
+
+        scheduleHeartbeat();
+    }
+
+    /**
+     * Schedules a heartbeat for when the maximum silence interval has
+     * passed, replacing any heartbeat already scheduled.
+     */
+    private synchronized void scheduleHeartbeat(){
+        if(policy.getHeartbeat() <= 0){
+            return;
+        }
+
+        if(heartbeatTask != null){
+            heartbeatTask.cancel(false);
+        }
+
+        heartbeatTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendHeartbeat();
+            }
+        }, policy.getHeartbeat(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-sends the latest measurement with a fresh time, to let the LMS
+     * know the sensor is still alive after a period of silence.
+     */
+    private void sendHeartbeat(){
+        Reading latest = current;
+
+        if(!power_on || latest == null){
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if(policy.isHeartbeatDue(now)){
+            forwardReading(new Reading(now, latest.measurement));
+        }
+    }
+
+    /**
+     * Uploads a set of readings to the connected LMS. If a journal is
+     * configured, readings which cannot be sent are journaled to be
+     * replayed later; while the journal holds unsent readings, new
+     * readings are journaled behind them to keep everything in order.
+     *
+     * @param readings the readings to upload, oldest first
+     */
+    private void uploadReadings(Reading[] readings){
+        // without a journal, failures are simply reported
+        if(journal == null){
+            if(!sendReadings(readings, oneway)){
+                System.err.println("LMS `" + metadata.lms + "` is unreachable!");
+            }
+            return;
+        }
+
+        synchronized(journal){
+            // send directly when nothing is waiting
+            if(journal.isEmpty() && sendReadings(readings, oneway)){
+                return;
+            }
+
+            // otherwise journal for later
+            int dropped = journal.append(readings);
+            if(dropped > 0){
+                System.err.println("Journal full, dropped " + dropped + " unsent reading(s)!");
+            }
+        }
+    }
+
+    /**
+     * Sends the oldest batch of journaled readings to the LMS, removing
+     * them from the journal once the LMS has confirmed receipt. Called
+     * at a fixed rate, so a backlog is drained gradually.
+     */
+    private void replayJournal(){
+        synchronized(journal){
+            if(journal.isEmpty()){
+                return;
+            }
+
+            // always wait for confirmation, so nothing is lost
+            Reading[] pending = journal.peek(replayBatch);
+            if(sendReadings(pending, false)){
+                journal.remove(pending.length);
+                if(journal.isEmpty()){
+                    System.out.println("Finished replaying journaled readings.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a set of readings to the connected LMS. If the LMS cannot be
+     * reached and there are other stations to choose from, the sensor
+     * moves to the least loaded of them and sends there instead.
+     *
+     * @param readings the readings to send, oldest first
+     * @param oneway whether to use the oneway operations
+     * @return true if the readings were sent
+     */
+    private boolean sendReadings(Reading[] readings, boolean oneway){
+        if(trySendReadings(readings, oneway)){
+            return true;
+        }
+
+        // move elsewhere and try once more
+        String previous = metadata.lms;
+        if(!selector.hasAlternatives() || !migrate(selector.leastLoaded(previous))){
+            return false;
+        }
+
+        System.err.println("LMS `" + previous + "` is unreachable, moved to `" + metadata.lms + "`.");
+
+        return trySendReadings(readings, oneway);
+    }
+
+    /**
+     * Checks whether the connected LMS has become unreachable or far more
+     * loaded than another candidate, moving to the other station if so.
+     */
+    private void rebalance(){
+        if(!power_on){
+            return;
+        }
+
+        String current = metadata.lms;
+        String best = selector.leastLoaded(current);
+        if(best == null){
+            return;
+        }
+
+        // move if the current station is gone or overloaded
+        int load = selector.load(current);
+        if(load >= 0 && !selector.shouldMove(load, selector.load(best))){
+            return;
+        }
+
+        if(migrate(best)){
+            System.out.println("Moved from LMS `" + current + "` to `" + best + "`.");
+        }
+    }
+
+    /**
+     * Moves the sensor to another station, registering with the new
+     * station before leaving the old one. Anything still buffered or
+     * journaled is sent to the new station.
+     *
+     * No lock is held while talking to the stations, so a slow station never
+     * holds up heartbeats or reporting; instead, a move attempted while
+     * another is in progress simply gives up.
+     *
+     * @param target the name of the station to move to (may be null)
+     * @return true if the sensor moved
+     */
+    private boolean migrate(String target){
+        if(target == null || target.equals(metadata.lms) || !migrating.compareAndSet(false, true)){
+            return false;
+        }
+
+        try {
+            final RemoteReference<LMS> previous = lms;
+            final SensorMeta previousMeta = metadata.sensorMeta;
+
+            // register with the new station
+            RemoteReference<LMS> next = connect(target);
+            try {
+                LMS station = next.get();
+                if(station == null){
+                    return false;
+                }
+                SensorMeta meta = resume(station, previousMeta.zone);
+                metadata.lms = target;
+                metadata.sensorMeta = meta;
+                lms = next;
+                rebind(previousMeta, meta);
+                attach(station);
+            } catch(Exception e) {
+                return false;
+            }
+
+            // leave the old station in the background, in case it's hanging
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        previous.get().removeSensor(previousMeta);
+                    } catch(Exception e) {
+                        // station has gone, nothing to remove from
+                    }
+                }
+            });
+
+            return true;
+        } finally {
+            migrating.set(false);
+        }
+    }
+
+    /**
+     * Binds this sensor in the NameService under its new id, if a station
+     * assigned it a different one, and drops the binding of the old id
+     * unless something else has taken it since.
+     *
+     * @param previous the metadata before the change
+     * @param next the metadata after the change
+     */
+    private void rebind(SensorMeta previous, SensorMeta next){
+        if(next.sensor.equals(previous.sensor)){
+            return;
+        }
+
+        try {
+            NameServiceHandler.bind(namingContextExt, self, next.sensor);
+        } catch(Exception e) {
+            System.err.println("Unable to bind Sensor to NameService as " + next.sensor + "!");
+            return;
+        }
+
+        try {
+            org.omg.CORBA.Object bound = namingContextExt.resolve_str(previous.sensor);
+            if(bound != null && bound._is_equivalent(self)){
+                namingContextExt.unbind(namingContextExt.to_name(previous.sensor));
+            }
+        } catch(Exception e) {
+            // nothing bound under the old id any more
+        }
+    }
+
+    /**
+     * Wraps a station in a {@link RemoteReference}, which registers the
+     * sensor again if the station ever has to be re-resolved.
+     *
+     * @param name the name of the station
+     * @return a RemoteReference instance
+     */
+    private RemoteReference<LMS> connect(String name){
+        return new RemoteReference<>(namingContextExt, name, LMS.class, new RemoteReference.Reconnect<LMS>() {
+            @Override
+            public void reconnected(LMS station) {
+                SensorMeta previous = metadata.sensorMeta;
+                metadata.sensorMeta = resume(station, previous.zone);
+                rebind(previous, metadata.sensorMeta);
+                attach(station);
+            }
+        });
+    }
+
+    /**
+     * Registers the sensor with a station again, resuming the current
+     * session so that the sensor keeps its id where the station allows.
+     *
+     * @param station the LMS to register with
+     * @param zone the zone of the sensor
+     * @return the SensorMeta assigned by the station
+     */
+    private SensorMeta resume(LMS station, String zone){
+        Session session = station.resumeSession(zone, token);
+        token = session.token;
+        return session.meta;
+    }
+
+    /**
+     * Sends a set of readings to the connected LMS, reconnecting if
+     * needed. A single reading is sent as a plain Alert, whereas many
+     * readings are sent as a single batch to save round trips.
+     *
+     * In oneway mode the send returns as soon as the request is sent,
+     * without waiting for the LMS to finish processing it.
+     *
+     * @param readings the readings to send, oldest first
+     * @param oneway whether to use the oneway operations
+     * @return true if the readings were sent
+     */
+    private boolean trySendReadings(final Reading[] readings, final boolean oneway){
+        try {
+            lms.invoke(new RemoteReference.RemoteCall<LMS, Void>() {
+                @Override
+                public Void call(LMS station) {
+                    MetaData config = new MetaData(metadata.lms, metadata.sensorMeta);
+                    if(readings.length == 1){
+                        if(oneway){
+                            station.submitAlert(new Alert(config, readings[0]));
+                        } else {
+                            station.receiveAlert(new Alert(config, readings[0]));
+                        }
+                    } else {
+                        if(oneway){
+                            station.submitReadings(config, readings);
+                        } else {
+                            station.receiveReadings(config, readings);
+                        }
+                    }
+                    return null;
+                }
+            });
+            return true;
+        } catch(Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a single-threaded scheduler running on a daemon thread,
+     * so that it never holds the sensor process open.
+     *
+     * @return a ScheduledExecutorService instance
+     */
+    private static ScheduledExecutorService createScheduler(){
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sensor-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 }
@@ -0,0 +1,450 @@
+package com.zackehh.floodz.sensor;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.MetaData;
+import com.zackehh.corba.common.Reading;
+import com.zackehh.corba.common.SensorMeta;
+import com.zackehh.corba.lms.LMS;
+import com.zackehh.floodz.common.util.NamePair;
+import com.zackehh.floodz.common.util.NameServiceHandler;
+import org.omg.CORBA.ORB;
+import org.omg.CosNaming.NamingContextExt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless load generator, simulating a fleet of Sensors inside a
+ * single process. Every virtual sensor registers with an LMS in the
+ * same way as a {@link SensorDriver}, and then emits readings at a
+ * configured rate whilst the throughput and acknowledgement latency
+ * of the LMS are reported.
+ *
+ * All virtual sensors share a single ORB and a single scheduler, so
+ * thousands of sensors can be run without thousands of JVMs.
+ *
+ * Each sensor keeps a schedule of when its readings are meant to be sent,
+ * independent of how long the LMS takes to answer. A slow LMS leaves the
+ * sensor behind schedule, and it then sends back to back to catch up;
+ * latency is measured from when each reading was meant to be sent, so time
+ * spent waiting behind a slow call is counted rather than hidden.
+ */
+public class SensorFleet {
+
+    /**
+     * Logging instance via log4j.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SensorFleet.class);
+
+    /**
+     * The virtual sensors in this fleet.
+     */
+    private final List<VirtualSensor> sensors = new ArrayList<>();
+
+    /**
+     * The parsed fleet arguments.
+     */
+    private final FleetArgs fArgs;
+
+    /**
+     * The scheduler used to emit readings.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Stats collected since the fleet started.
+     */
+    private final FleetStats totalStats = new FleetStats();
+
+    /**
+     * Stats collected since the last report.
+     */
+    private volatile FleetStats intervalStats = new FleetStats();
+
+    /**
+     * Args class for parsing options.
+     */
+    private static class FleetArgs {
+
+        /**
+         * The names of the LMS instances to spread sensors across.
+         */
+        @Parameter(names = "-lms", description = "Comma-separated names of the LMS instances to connect to", required = true)
+        public List<String> lms = new ArrayList<>();
+
+        /**
+         * The names of the zones to spread sensors across.
+         */
+        @Parameter(names = "-zones", description = "Comma-separated names of the zones to create sensors in")
+        public List<String> zones = new ArrayList<>();
+
+        /**
+         * The number of virtual sensors to start.
+         */
+        @Parameter(names = "-sensors", description = "Number of virtual sensors to start")
+        public int sensors = 1000;
+
+        /**
+         * The number of readings each sensor emits per second.
+         */
+        @Parameter(names = "-rate", description = "Readings per second emitted by each sensor")
+        public double rate = 1.0;
+
+        /**
+         * How the time between readings is chosen.
+         */
+        @Parameter(names = "-arrival", description = "Reading arrival pattern: fixed or poisson")
+        public String arrival = "fixed";
+
+        /**
+         * How measurements are chosen.
+         */
+        @Parameter(names = "-distribution", description = "Measurement distribution: uniform, gaussian or walk")
+        public String distribution = "walk";
+
+        /**
+         * The centre of the measurement distribution.
+         */
+        @Parameter(names = "-mean", description = "Mean measurement value")
+        public int mean = 30;
+
+        /**
+         * The spread of the measurement distribution.
+         */
+        @Parameter(names = "-spread", description = "Spread of measurement values around the mean")
+        public int spread = 10;
+
+        /**
+         * Whether to send readings without waiting for confirmation.
+         */
+        @Parameter(names = "-oneway", description = "Send readings without waiting for the LMS to confirm")
+        public boolean oneway = false;
+
+        /**
+         * The number of threads used to emit readings.
+         */
+        @Parameter(names = "-threads", description = "Number of threads used to emit readings")
+        public int threads = Runtime.getRuntime().availableProcessors() * 4;
+
+        /**
+         * How long to run for, in seconds.
+         */
+        @Parameter(names = "-duration", description = "Seconds to run for (0 runs until interrupted)")
+        public int duration = 0;
+
+        /**
+         * How often to report stats, in seconds.
+         */
+        @Parameter(names = "-report", description = "Seconds between throughput reports")
+        public int report = 5;
+    }
+
+    /**
+     * Main entry point for a fleet. Parses arguments, registers all
+     * sensors and runs until the duration expires.
+     *
+     * @param args the program arguments
+     */
+    public static void main(String[] args) throws Exception {
+        // create a new fleet arguments object
+        FleetArgs fArgs = new FleetArgs();
+
+        // provide JCommander with the arguments
+        JCommander j = new JCommander(fArgs);
+
+        // set parse arguments
+        j.setAcceptUnknownOptions(true);
+        // parse the arguments
+        j.parse(args);
+
+        // default to a single zone
+        if(fArgs.zones.isEmpty()){
+            fArgs.zones.add("Zone1");
+        }
+
+        // create and run the fleet
+        new SensorFleet(args, fArgs).run();
+    }
+
+    /**
+     * Initializes a shared ORB, finds every LMS and registers the
+     * virtual sensors across the configured zones.
+     *
+     * @param args the program args
+     * @param fArgs the parsed fleet args
+     */
+    private SensorFleet(String[] args, FleetArgs fArgs){
+        this.fArgs = fArgs;
+
+        // initialise the ORB shared by every sensor
+        ORB orb = ORB.init(args, null);
+
+        // retrieve a name service
+        NamingContextExt namingContextExt;
+        try {
+            NamePair namingPair = NameServiceHandler.retrieveNameService(orb);
+            if(namingPair == null){
+                throw new Exception();
+            }
+            namingContextExt = namingPair.getNamingService();
+        } catch(Exception e) {
+            throw new IllegalStateException("Retrieved name service is null!");
+        }
+
+        // find every LMS
+        List<LMS> stations = new ArrayList<>();
+        for(String lmsName : fArgs.lms){
+            LMS lms = NameServiceHandler.retrieveObject(namingContextExt, lmsName, LMS.class);
+            if(lms == null){
+                throw new IllegalStateException("Unable to find an LMS with name `" + lmsName + "`");
+            }
+            stations.add(lms);
+        }
+
+        // create the scheduler for emitting readings
+        final AtomicInteger threadCount = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(fArgs.threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fleet-sensor-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        logger.info("Registering {} sensors across {} zone(s) and {} station(s)...",
+                new Object[]{ fArgs.sensors, fArgs.zones.size(), stations.size() });
+
+        // count the sensors of each zone/station pairing, spreading them evenly
+        int[][] counts = new int[fArgs.zones.size()][stations.size()];
+        for(int i = 0; i < fArgs.sensors; i++){
+            counts[i % fArgs.zones.size()][(i / fArgs.zones.size()) % stations.size()]++;
+        }
+
+        // register each pairing in bulk, rather than a call per sensor
+        for(int zone = 0; zone < counts.length; zone++){
+            for(int station = 0; station < stations.size(); station++){
+                LMS lms = stations.get(station);
+                for(int remaining = counts[zone][station]; remaining > 0; ){
+                    SensorMeta[] metas = lms.registerSensors(fArgs.zones.get(zone), remaining);
+                    if(metas.length == 0){
+                        throw new IllegalStateException("Unable to register sensors with `" + fArgs.lms.get(station) + "`");
+                    }
+                    for(SensorMeta meta : metas){
+                        sensors.add(new VirtualSensor(lms, new MetaData(fArgs.lms.get(station), meta), fArgs.mean));
+                    }
+                    remaining -= metas.length;
+                }
+            }
+        }
+
+        logger.info("Registered {} sensors", sensors.size());
+
+        // remove the sensors on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    /**
+     * Starts every sensor emitting readings and reports stats until the
+     * duration expires (or forever, if no duration was set).
+     */
+    private void run() throws InterruptedException {
+        // the mean gap between readings, in micros
+        long period = (long) (1000000 / fArgs.rate);
+
+        // start each sensor at a random offset to avoid lock-step
+        for(VirtualSensor sensor : sensors){
+            sensor.start(ThreadLocalRandom.current().nextLong(period + 1));
+        }
+
+        // report regularly
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                FleetStats stats = intervalStats;
+                intervalStats = new FleetStats();
+                logger.info("Interval: {}", stats.summary());
+            }
+        }, fArgs.report, fArgs.report, TimeUnit.SECONDS);
+
+        // wait for the duration, or forever
+        if(fArgs.duration > 0){
+            TimeUnit.SECONDS.sleep(fArgs.duration);
+        } else {
+            new CountDownLatch(1).await();
+        }
+
+        // stop and exit
+        logger.info("Total: {}", totalStats.summary());
+        System.exit(0);
+    }
+
+    /**
+     * Stops emitting readings and removes each sensor from its LMS.
+     */
+    private void shutdown(){
+        scheduler.shutdownNow();
+        for(VirtualSensor sensor : sensors){
+            try {
+                sensor.lms.removeSensor(sensor.meta.sensorMeta);
+            } catch(Exception e) {
+                // station has gone, nothing to remove from
+            }
+        }
+    }
+
+    /**
+     * A single simulated sensor, holding only the state needed to
+     * emit readings to its LMS.
+     */
+    private class VirtualSensor implements Runnable {
+
+        /**
+         * The LMS this sensor reports to.
+         */
+        private final LMS lms;
+
+        /**
+         * The metadata assigned to this sensor.
+         */
+        private final MetaData meta;
+
+        /**
+         * The last measurement emitted, used by the random walk.
+         */
+        private int last;
+
+        /**
+         * When the next reading is meant to be sent, from System.nanoTime().
+         */
+        private long intended;
+
+        /**
+         * Creates a new virtual sensor.
+         *
+         * @param lms the LMS to report to
+         * @param meta the assigned metadata
+         * @param initial the initial measurement
+         */
+        VirtualSensor(LMS lms, MetaData meta, int initial){
+            this.lms = lms;
+            this.meta = meta;
+            this.last = initial;
+        }
+
+        /**
+         * Starts emitting readings after an initial delay.
+         *
+         * @param delay the delay in micros
+         */
+        void start(long delay){
+            intended = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delay);
+            schedule(delay);
+        }
+
+        /**
+         * Emits a single reading and schedules the next one.
+         */
+        @Override
+        public void run() {
+            // create the next reading
+            Reading reading = new Reading(System.currentTimeMillis(), nextMeasurement());
+
+            // send and time the acknowledgement (or just the send, if oneway),
+            // from when the reading was meant to go rather than when it went
+            long start = intended;
+            try {
+                if(fArgs.oneway){
+                    lms.submitAlert(new Alert(meta, reading));
+                } else {
+                    lms.receiveAlert(new Alert(meta, reading));
+                }
+                long taken = System.nanoTime() - start;
+                totalStats.recordSent(taken);
+                intervalStats.recordSent(taken);
+            } catch(Exception e) {
+                totalStats.recordFailure();
+                intervalStats.recordFailure();
+            }
+
+            // queue up the next reading against the schedule, not the send
+            intended += TimeUnit.MICROSECONDS.toNanos(nextDelay());
+            schedule(Math.max(0, TimeUnit.NANOSECONDS.toMicros(intended - System.nanoTime())));
+        }
+
+        /**
+         * Schedules this sensor to emit a reading after a delay.
+         *
+         * @param delay the delay in micros
+         */
+        private void schedule(long delay){
+            if(!scheduler.isShutdown()){
+                scheduler.schedule(this, delay, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        /**
+         * Calculates the delay before the next reading, based on the
+         * configured rate and arrival pattern.
+         *
+         * @return the delay in micros
+         */
+        private long nextDelay(){
+            // the mean gap between readings
+            double period = 1000000 / fArgs.rate;
+
+            // poisson arrivals have exponentially distributed gaps
+            if(fArgs.arrival.equals("poisson")){
+                return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * period);
+            }
+
+            return (long) period;
+        }
+
+        /**
+         * Generates the next measurement based on the configured
+         * distribution, bounded to the valid sensor range.
+         *
+         * @return the measurement
+         */
+        private int nextMeasurement(){
+            Random random = ThreadLocalRandom.current();
+
+            int measurement;
+            switch(fArgs.distribution){
+                case "uniform":
+                    measurement = fArgs.mean - fArgs.spread + random.nextInt(fArgs.spread * 2 + 1);
+                    break;
+                case "gaussian":
+                    measurement = (int) Math.round(fArgs.mean + random.nextGaussian() * fArgs.spread);
+                    break;
+                default:
+                    // small steps either side of the last measurement
+                    measurement = last + (int) Math.round(random.nextGaussian() * Math.max(1, fArgs.spread / 4));
+                    break;
+            }
+
+            // clamp to the range a sensor accepts
+            last = Math.max(0, Math.min(100, measurement));
+
+            return last;
+        }
+    }
+}
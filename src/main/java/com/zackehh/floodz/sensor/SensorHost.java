@@ -0,0 +1,708 @@
+package com.zackehh.floodz.sensor;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.zackehh.corba.common.Alert;
+import com.zackehh.corba.common.MetaData;
+import com.zackehh.corba.common.Reading;
+import com.zackehh.corba.common.ReadingPage;
+import com.zackehh.corba.common.SensorMeta;
+import com.zackehh.corba.common.Session;
+import com.zackehh.corba.lms.LMS;
+import com.zackehh.corba.sensor.Sensor;
+import com.zackehh.corba.sensor.SensorHelper;
+import com.zackehh.corba.sensor.SensorPOA;
+import com.zackehh.floodz.common.util.NamePair;
+import com.zackehh.floodz.common.util.NameServiceHandler;
+import com.zackehh.floodz.common.util.RemoteReference;
+import org.omg.CORBA.OBJECT_NOT_EXIST;
+import org.omg.CORBA.ORB;
+import org.omg.CORBA.Policy;
+import org.omg.CosNaming.NamingContextExt;
+import org.omg.PortableServer.IdAssignmentPolicyValue;
+import org.omg.PortableServer.IdUniquenessPolicyValue;
+import org.omg.PortableServer.POA;
+import org.omg.PortableServer.RequestProcessingPolicyValue;
+import org.omg.PortableServer.ServantRetentionPolicyValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hosts many Sensors inside a single process and a single ORB. Rather than
+ * a servant per sensor, every sensor is served by one default servant on a
+ * dedicated POA; the ObjectId of each reference is simply the index of the
+ * sensor, and the servant looks up the per-sensor state for the current
+ * request by that index.
+ *
+ * All per-sensor state is kept in flat arrays (and a shared {@link ReadingLog}),
+ * so each sensor costs a few dozen bytes plus its reading history, rather
+ * than a JVM of its own.
+ *
+ * Hosted sensors forward every reading as it is recorded, so they are not
+ * attached to their LMS for adaptive sampling; this saves a call per sensor
+ * on every registration, and the LMS never pushes intervals to them.
+ */
+public class SensorHost {
+
+    /**
+     * Logging instance via log4j.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SensorHost.class);
+
+    /**
+     * The name of the POA serving the hosted sensors.
+     */
+    private static final String POA_NAME = "SensorHost";
+
+    /**
+     * The maximum number of locks used to guard sensor state.
+     */
+    private static final int MAX_LOCKS = 64;
+
+    /**
+     * The parsed host arguments.
+     */
+    private final HostArgs hArgs;
+
+    /**
+     * The POA serving every hosted sensor.
+     */
+    private final POA poa;
+
+    /**
+     * The names of the zones sensors are placed in.
+     */
+    private final String[] zones;
+
+    /**
+     * The connected stations, one reference per LMS.
+     */
+    private final List<RemoteReference<LMS>> stations = new ArrayList<>();
+
+    /**
+     * The reading history of every sensor, one log per sensor.
+     */
+    private final ReadingLog readingLog;
+
+    /**
+     * The index of the zone of each sensor.
+     */
+    private final int[] zoneIndex;
+
+    /**
+     * The index of the station of each sensor.
+     */
+    private final int[] stationIndex;
+
+    /**
+     * The id assigned to each sensor by its LMS.
+     */
+    private final String[] ids;
+
+    /**
+     * The session token of each sensor, used to keep the same id when
+     * registering again.
+     */
+    private final String[] tokens;
+
+    /**
+     * The alert level assigned to each sensor by its LMS.
+     */
+    private final int[] alertLevels;
+
+    /**
+     * Whether each sensor is powered on.
+     */
+    private final boolean[] powered;
+
+    /**
+     * Locks guarding the per-sensor state, striped by sensor index.
+     */
+    private final Object[] locks;
+
+    /**
+     * Args class for parsing options.
+     */
+    private static class HostArgs {
+
+        /**
+         * The names of the LMS instances to spread sensors across.
+         */
+        @Parameter(names = "-lms", description = "Comma-separated names of the LMS instances to connect to", required = true)
+        public List<String> lms = new ArrayList<>();
+
+        /**
+         * The names of the zones to spread sensors across.
+         */
+        @Parameter(names = "-zones", description = "Comma-separated names of the zones to host sensors in")
+        public List<String> zones = new ArrayList<>();
+
+        /**
+         * The number of sensors to host.
+         */
+        @Parameter(names = "-sensors", description = "Number of sensors to host")
+        public int sensors = 1000;
+
+        /**
+         * The number of readings kept per sensor.
+         */
+        @Parameter(names = "-history", description = "Maximum number of readings kept in each sensor's log")
+        public int history = 100;
+
+        /**
+         * Whether to send readings without waiting for confirmation.
+         */
+        @Parameter(names = "-oneway", description = "Send readings without waiting for the LMS to confirm")
+        public boolean oneway = false;
+
+        /**
+         * Whether to bind every sensor in the NameService.
+         */
+        @Parameter(names = "-bind", description = "Bind each sensor in the NameService under its assigned id")
+        public boolean bind = false;
+
+        /**
+         * A file to write the reference of every sensor to.
+         */
+        @Parameter(names = "-refs", description = "File to write a `zone id IOR` line per sensor to")
+        public String refs;
+    }
+
+    /**
+     * Main entry point for a host. Parses arguments, registers every
+     * sensor and then serves requests until the process is stopped.
+     *
+     * @param args the program arguments
+     */
+    public static void main(String[] args) throws Exception {
+        // create a new host arguments object
+        HostArgs hArgs = new HostArgs();
+
+        // provide JCommander with the arguments
+        JCommander j = new JCommander(hArgs);
+
+        // set parse arguments
+        j.setAcceptUnknownOptions(true);
+        // parse the arguments
+        j.parse(args);
+
+        // default to a single zone
+        if(hArgs.zones.isEmpty()){
+            hArgs.zones.add("Zone1");
+        }
+
+        // create the host and serve forever
+        ORB orb = ORB.init(args, null);
+        new SensorHost(orb, hArgs);
+        orb.run();
+    }
+
+    /**
+     * Creates the sensor POA, finds every LMS and registers each hosted
+     * sensor across the configured zones and stations.
+     *
+     * @param orb the ORB to serve on
+     * @param hArgs the parsed host args
+     */
+    private SensorHost(ORB orb, HostArgs hArgs) throws Exception {
+        this.hArgs = hArgs;
+
+        int count = hArgs.sensors;
+        if(count < 1){
+            throw new IllegalStateException("Must host at least one sensor!");
+        }
+
+        // retrieve a name service
+        NamePair namingPair = NameServiceHandler.retrieveNameService(orb);
+        if(namingPair == null){
+            throw new IllegalStateException("Retrieved name service is null!");
+        }
+        NamingContextExt namingContextExt = namingPair.getNamingService();
+
+        // allocate the per-sensor state
+        zones = hArgs.zones.toArray(new String[hArgs.zones.size()]);
+        readingLog = new ReadingLog(count, hArgs.history);
+        zoneIndex = new int[count];
+        stationIndex = new int[count];
+        ids = new String[count];
+        tokens = new String[count];
+        alertLevels = new int[count];
+        powered = new boolean[count];
+        locks = new Object[Math.min(count, MAX_LOCKS)];
+        for(int i = 0; i < locks.length; i++){
+            locks[i] = new Object();
+        }
+
+        // create a POA serving every sensor through a single servant
+        POA rootPOA = namingPair.getRootPOA();
+        Policy[] policies = new Policy[]{
+                rootPOA.create_id_assignment_policy(IdAssignmentPolicyValue.USER_ID),
+                rootPOA.create_id_uniqueness_policy(IdUniquenessPolicyValue.MULTIPLE_ID),
+                rootPOA.create_servant_retention_policy(ServantRetentionPolicyValue.NON_RETAIN),
+                rootPOA.create_request_processing_policy(RequestProcessingPolicyValue.USE_DEFAULT_SERVANT)
+        };
+        poa = rootPOA.create_POA(POA_NAME, rootPOA.the_POAManager(), policies);
+        poa.set_servant(new HostedSensor());
+
+        // find every LMS, re-registering its sensors if it has to be re-resolved
+        for(int s = 0; s < hArgs.lms.size(); s++){
+            final int station = s;
+            RemoteReference<LMS> ref = new RemoteReference<>(namingContextExt, hArgs.lms.get(s), LMS.class,
+                    new RemoteReference.Reconnect<LMS>() {
+                        @Override
+                        public void reconnected(LMS lms) {
+                            reregister(station, lms);
+                        }
+                    });
+            if(ref.get() == null){
+                throw new IllegalStateException("Unable to find an LMS with name `" + hArgs.lms.get(s) + "`");
+            }
+            stations.add(ref);
+        }
+
+        logger.info("Registering {} sensors across {} zone(s) and {} station(s)...",
+                new Object[]{ count, zones.length, stations.size() });
+
+        // register every sensor, covering each zone/station pairing
+        PrintWriter refs = hArgs.refs == null ? null :
+                new PrintWriter(Files.newBufferedWriter(Paths.get(hArgs.refs), StandardCharsets.UTF_8));
+        try {
+            // spread the sensors evenly over each zone/station pairing
+            List<List<Integer>> pairings = new ArrayList<>();
+            for(int i = 0; i < zones.length * stations.size(); i++){
+                pairings.add(new ArrayList<Integer>());
+            }
+            for(int i = 0; i < count; i++){
+                zoneIndex[i] = i % zones.length;
+                stationIndex[i] = (i / zones.length) % stations.size();
+                pairings.get(stationIndex[i] * zones.length + zoneIndex[i]).add(i);
+            }
+
+            // open the sessions of each pairing in bulk, rather than a call per sensor
+            for(List<Integer> sensors : pairings){
+                if(sensors.isEmpty()){
+                    continue;
+                }
+                int station = stationIndex[sensors.get(0)];
+                String zone = zones[zoneIndex[sensors.get(0)]];
+                LMS lms = stations.get(station).get();
+                for(int opened = 0; opened < sensors.size(); ){
+                    Session[] sessions = lms.openSessions(zone, sensors.size() - opened);
+                    if(sessions.length == 0){
+                        throw new IllegalStateException("Unable to open sessions with `" + hArgs.lms.get(station) + "`");
+                    }
+                    for(Session session : sessions){
+                        int i = sensors.get(opened++);
+                        ids[i] = session.meta.sensor;
+                        tokens[i] = session.token;
+                        alertLevels[i] = session.meta.alert_level;
+                        powered[i] = true;
+                    }
+                }
+            }
+
+            // hosted sensors forward every reading, so are never attached for sampling
+            for(int i = 0; i < count; i++){
+                SensorMeta meta = meta(i);
+                Sensor ref = createReference(i);
+                if(hArgs.bind){
+                    NameServiceHandler.bind(namingContextExt, ref, meta.sensor);
+                }
+                if(refs != null){
+                    refs.println(meta.zone + " " + meta.sensor + " " + orb.object_to_string(ref));
+                }
+            }
+        } finally {
+            if(refs != null){
+                refs.close();
+            }
+        }
+
+        logger.info("Hosting {} sensors", count);
+
+        // remove the sensors on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    /**
+     * Creates a Sensor reference for a hosted sensor. No servant is
+     * activated; requests are dispatched to the default servant.
+     *
+     * @param sensor the index of the sensor
+     * @return a Sensor reference
+     */
+    private Sensor createReference(int sensor){
+        byte[] oid = ByteBuffer.allocate(4).putInt(sensor).array();
+        return SensorHelper.narrow(poa.create_reference_with_id(oid, SensorHelper.id()));
+    }
+
+    /**
+     * Records a reading for a sensor and forwards it to its LMS.
+     *
+     * @param sensor the index of the sensor
+     * @param measurement the measurement of the reading
+     */
+    private void record(int sensor, int measurement){
+        final Reading reading = new Reading(System.currentTimeMillis(), measurement);
+
+        final MetaData config;
+        synchronized(lock(sensor)){
+            if(!powered[sensor]){
+                return;
+            }
+            config = new MetaData(hArgs.lms.get(stationIndex[sensor]), meta(sensor));
+        }
+
+        readingLog.add(sensor, reading.time, reading.measurement);
+
+        try {
+            stations.get(stationIndex[sensor]).invoke(new RemoteReference.RemoteCall<LMS, Void>() {
+                @Override
+                public Void call(LMS station) {
+                    if(hArgs.oneway){
+                        station.submitAlert(new Alert(config, reading));
+                    } else {
+                        station.receiveAlert(new Alert(config, reading));
+                    }
+                    return null;
+                }
+            });
+        } catch(Exception e) {
+            logger.warn("LMS `{}` is unreachable!", config.lms);
+        }
+    }
+
+    /**
+     * Registers every powered sensor of a station again, after the
+     * station has been re-resolved. Sessions are resumed in bulk per zone,
+     * so sensors keep their ids wherever the LMS allows.
+     *
+     * No sensor lock is held during the calls; a sensor whose token changed
+     * in the meantime (e.g. it was powered off and on) keeps its newer
+     * session. If any batch fails, the other batches still go ahead, and the
+     * failure is thrown afterwards so the station is resolved and every
+     * sensor resumed again once the backoff passes; resuming a session the
+     * LMS already holds keeps its id, so this is safe to repeat.
+     *
+     * @param station the index of the station
+     * @param lms the newly resolved station
+     */
+    private void reregister(int station, LMS lms){
+        // gather the tokens of the powered sensors of each zone
+        List<List<Integer>> sensors = new ArrayList<>();
+        List<List<String>> held = new ArrayList<>();
+        for(int z = 0; z < zones.length; z++){
+            sensors.add(new ArrayList<Integer>());
+            held.add(new ArrayList<String>());
+        }
+        for(int i = 0; i < ids.length; i++){
+            if(stationIndex[i] != station){
+                continue;
+            }
+            synchronized(lock(i)){
+                if(powered[i]){
+                    sensors.get(zoneIndex[i]).add(i);
+                    held.get(zoneIndex[i]).add(tokens[i]);
+                }
+            }
+        }
+
+        RuntimeException failure = null;
+
+        // resume each zone in bulk, rather than a call per sensor
+        for(int z = 0; z < zones.length; z++){
+            List<String> zoneTokens = held.get(z);
+            for(int resumed = 0; resumed < zoneTokens.size(); ){
+                Session[] sessions;
+                try {
+                    List<String> pending = zoneTokens.subList(resumed, zoneTokens.size());
+                    sessions = lms.resumeSessions(zones[z], pending.toArray(new String[pending.size()]));
+                } catch(RuntimeException e) {
+                    logger.warn("Unable to resume {} sensors in zone `{}`: {}",
+                            new Object[]{ zoneTokens.size() - resumed, zones[z], e });
+                    failure = e;
+                    break;
+                }
+                if(sessions.length == 0){
+                    failure = new IllegalStateException("Unable to resume sessions with `" + hArgs.lms.get(station) + "`");
+                    break;
+                }
+                for(Session session : sessions){
+                    int i = sensors.get(z).get(resumed);
+                    String token = zoneTokens.get(resumed++);
+                    synchronized(lock(i)){
+                        // leave sensors which moved on alone
+                        if(powered[i] && token.equals(tokens[i])){
+                            ids[i] = session.meta.sensor;
+                            tokens[i] = session.token;
+                            alertLevels[i] = session.meta.alert_level;
+                        }
+                    }
+                }
+            }
+        }
+
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    /**
+     * Removes every powered sensor from its station.
+     */
+    private void shutdown(){
+        for(int i = 0; i < ids.length; i++){
+            try {
+                SensorMeta meta;
+                synchronized(lock(i)){
+                    if(!powered[i]){
+                        continue;
+                    }
+                    meta = meta(i);
+                }
+                stations.get(stationIndex[i]).get().removeSensor(meta);
+            } catch(Exception e) {
+                // station has gone, nothing to remove from
+            }
+        }
+    }
+
+    /**
+     * Creates the SensorMeta of a sensor. Must be called holding its lock.
+     *
+     * @param sensor the index of the sensor
+     * @return a SensorMeta instance
+     */
+    private SensorMeta meta(int sensor){
+        return new SensorMeta(zones[zoneIndex[sensor]], ids[sensor], alertLevels[sensor]);
+    }
+
+    /**
+     * Retrieves the lock guarding a sensor.
+     *
+     * @param sensor the index of the sensor
+     * @return the lock Object
+     */
+    private Object lock(int sensor){
+        return locks[sensor % locks.length];
+    }
+
+    /**
+     * The default servant of the host POA, shared by every hosted sensor.
+     * Each request works out which sensor it is for from the ObjectId
+     * of the target reference.
+     */
+    private class HostedSensor extends SensorPOA {
+
+        /**
+         * Retrieve the current reading of the sensor. As a reading cannot
+         * be null over the wire, an empty reading is returned if none has
+         * been made.
+         *
+         * @return the Reading value
+         */
+        @Override
+        public Reading currentReading() {
+            Reading latest = readingLog.latest(sensor());
+            return latest == null ? new Reading(0, 0) : latest;
+        }
+
+        /**
+         * Retrieve the id of the sensor.
+         *
+         * @return the String id
+         */
+        @Override
+        public String id() {
+            int sensor = sensor();
+            synchronized(lock(sensor)){
+                return ids[sensor];
+            }
+        }
+
+        /**
+         * Retrieve the zone of the sensor.
+         *
+         * @return the String zone
+         */
+        @Override
+        public String zone() {
+            return zones[zoneIndex[sensor()]];
+        }
+
+        /**
+         * Powers off the sensor, removing it from the LMS.
+         *
+         * @return true if successful
+         */
+        @Override
+        public boolean powerOff() {
+            final int sensor = sensor();
+            final SensorMeta meta;
+            synchronized(lock(sensor)){
+                if(!powered[sensor]){
+                    return false;
+                }
+                powered[sensor] = false;
+                meta = meta(sensor);
+            }
+            try {
+                stations.get(stationIndex[sensor]).invoke(new RemoteReference.RemoteCall<LMS, Boolean>() {
+                    @Override
+                    public Boolean call(LMS station) {
+                        return station.removeSensor(meta);
+                    }
+                });
+            } catch(Exception e) {
+                logger.warn("Unable to unregister sensor {} from LMS!", sensor);
+            }
+            return true;
+        }
+
+        /**
+         * Powers on the sensor, registering it with the LMS again.
+         *
+         * @return true if successful
+         */
+        @Override
+        public boolean powerOn() {
+            final int sensor = sensor();
+            synchronized(lock(sensor)){
+                if(powered[sensor]){
+                    return false;
+                }
+            }
+            try {
+                stations.get(stationIndex[sensor]).invoke(new RemoteReference.RemoteCall<LMS, Void>() {
+                    @Override
+                    public Void call(LMS station) {
+                        String token;
+                        synchronized(lock(sensor)){
+                            token = tokens[sensor];
+                        }
+                        Session session = station.resumeSession(zones[zoneIndex[sensor]], token);
+                        synchronized(lock(sensor)){
+                            ids[sensor] = session.meta.sensor;
+                            tokens[sensor] = session.token;
+                            alertLevels[sensor] = session.meta.alert_level;
+                            powered[sensor] = true;
+                        }
+                        return null;
+                    }
+                });
+            } catch(Exception e) {
+                logger.warn("Unable to reconnect sensor {} to LMS!", sensor);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Resets the sensor status, clearing its reading log.
+         */
+        @Override
+        public void reset() {
+            readingLog.clear(sensor());
+        }
+
+        /**
+         * Records a reading and forwards it to the LMS of the sensor.
+         *
+         * @param measurement the measurement of the reading
+         */
+        @Override
+        public void sendAlert(int measurement) {
+            record(sensor(), measurement);
+        }
+
+        /**
+         * Sets how often the sensor reports, as requested by the LMS. Hosted
+         * sensors already forward every reading as it is recorded, so they
+         * are never attached to their LMS, and an interval sent anyway is
+         * ignored.
+         *
+         * @param interval the reporting interval in ms, or 0 to stop sampling
+         */
+        @Override
+        public void setReportingInterval(long interval) {
+            // every reading is already forwarded
+        }
+
+        /**
+         * Retrieves the Reading log of the sensor in compact encoding.
+         *
+         * @return a byte[] of the encoded readings
+         */
+        @Override
+        public byte[] getEncodedReadingLog() {
+            return readingLog.encode(sensor());
+        }
+
+        /**
+         * Retrieves the Reading log of the sensor as Reading array.
+         *
+         * @return a Reading[] of the known readings
+         */
+        @Override
+        public Reading[] getReadingLog() {
+            return readingLog.snapshot(sensor());
+        }
+
+        /**
+         * Continues retrieval of a time range of the Reading log.
+         *
+         * @param cursor the cursor to resume from
+         * @param to the time to stop before
+         * @param limit the maximum number of readings to return
+         * @return a ReadingPage of readings and the next cursor (or -1)
+         */
+        @Override
+        public ReadingPage getReadingPage(long cursor, long to, int limit) {
+            return readingLog.page(sensor(), cursor, to, limit);
+        }
+
+        /**
+         * Retrieves the readings made within [from, to).
+         *
+         * @param from the earliest time to include
+         * @param to the time to stop before
+         * @param limit the maximum number of readings to return
+         * @return a ReadingPage of readings and the next cursor (or -1)
+         */
+        @Override
+        public ReadingPage getReadingRange(long from, long to, int limit) {
+            return readingLog.range(sensor(), from, to, limit);
+        }
+
+        /**
+         * Works out which sensor the current request targets, from the
+         * ObjectId of the reference being invoked.
+         *
+         * @return the index of the sensor
+         */
+        private int sensor(){
+            byte[] oid = _object_id();
+            if(oid.length != 4){
+                throw new OBJECT_NOT_EXIST();
+            }
+            int sensor = ByteBuffer.wrap(oid).getInt();
+            if(sensor < 0 || sensor >= ids.length){
+                throw new OBJECT_NOT_EXIST();
+            }
+            return sensor;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.zackehh.floodz.sensor;
+
+import com.zackehh.corba.lms.LMS;
+import com.zackehh.floodz.common.util.NameServiceHandler;
+import org.omg.CosNaming.NamingContextExt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses which of a set of candidate stations a Sensor should report to,
+ * using the load each LMS publishes. The least loaded reachable station is
+ * preferred; a sensor only moves off a reachable station when it is loaded
+ * well beyond the best alternative, so sensors don't bounce between
+ * stations of similar load.
+ */
+class StationSelector {
+
+    /**
+     * The minimum load difference (in readings per second) worth moving for.
+     */
+    private static final int MIN_DIFFERENCE = 5;
+
+    /**
+     * The NameService used to find stations.
+     */
+    private final NamingContextExt nameService;
+
+    /**
+     * The names of the candidate stations.
+     */
+    private final List<String> candidates = new ArrayList<>();
+
+    /**
+     * How much more loaded (as a fraction) a station must be to move off it.
+     */
+    private final double margin;
+
+    /**
+     * Creates a new selector over a comma-separated list of stations.
+     *
+     * @param nameService the NameService to find stations with
+     * @param names the comma-separated station names
+     * @param margin the fraction a station must be more loaded by to move off it
+     */
+    public StationSelector(NamingContextExt nameService, String names, double margin){
+        this.nameService = nameService;
+        this.margin = margin;
+        for(String name : names.split(",")){
+            if(!name.trim().isEmpty()){
+                candidates.add(name.trim());
+            }
+        }
+    }
+
+    /**
+     * Determines whether there is more than one station to choose from.
+     *
+     * @return true if failover is possible
+     */
+    public boolean hasAlternatives(){
+        return candidates.size() > 1;
+    }
+
+    /**
+     * Returns the first candidate, for when there is nothing to choose.
+     *
+     * @return the String station name
+     */
+    public String first(){
+        return candidates.get(0);
+    }
+
+    /**
+     * Finds the least loaded reachable station, other than the excluded one.
+     *
+     * @param exclude a station to skip (may be null)
+     * @return the String station name, or null if none are reachable
+     */
+    public String leastLoaded(String exclude){
+        String best = null;
+        int bestLoad = Integer.MAX_VALUE;
+
+        for(String candidate : candidates){
+            if(candidate.equals(exclude)){
+                continue;
+            }
+            int load = load(candidate);
+            if(load >= 0 && load < bestLoad){
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Retrieves the published load of a station.
+     *
+     * @param name the station name
+     * @return the load in readings per second, or -1 if unreachable
+     */
+    public int load(String name){
+        LMS station = NameServiceHandler.retrieveObject(nameService, name, LMS.class);
+        if(station == null){
+            return -1;
+        }
+        try {
+            return station.load();
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Determines whether a station is loaded enough beyond an alternative
+     * to be worth moving off.
+     *
+     * @param current the load of the current station
+     * @param alternative the load of the alternative station
+     * @return true if the sensor should move
+     */
+    public boolean shouldMove(int current, int alternative){
+        return current - alternative > Math.max(MIN_DIFFERENCE, current * margin);
+    }
+}